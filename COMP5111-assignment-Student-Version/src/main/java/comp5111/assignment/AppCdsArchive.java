@@ -0,0 +1,34 @@
+package comp5111.assignment;
+
+import comp5111.assignment.runner.ClassDataSharing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>Creates an AppCDS archive of the classes the tool loads (Soot, JUnit, the probe runtime and the tool itself)
+ * from a training run of {@link Assignment1} with the same arguments and settings.</p>
+ */
+public class AppCdsArchive {
+    public static void main(String[] args) {
+        if (args.length <= 1 || !ClassDataSharing.isSupported()) {
+            System.err.println("Usage: java AppCdsArchive [coverage level] classnames ...");
+            System.err.println("Usage: runs Assignment1 once with these arguments and -Dcomp5111.* settings, then "
+                + "start the tool with -XX:SharedArchiveFile=<archive> and the same class path");
+            System.err.println("Usage: -D" + Settings.CDS_ARCHIVE + "=<file> where to write the archive");
+            System.err.println("Usage: needs JDK 10 or later, this is " + System.getProperty("java.version"));
+            System.exit(0);
+        }
+
+        File archive = Settings.cdsArchive();
+        try {
+            ClassDataSharing.createArchive(archive, System.getProperty("java.class.path"), Settings.forwarded(),
+                Assignment1.class.getName(), Arrays.asList(args));
+            System.err.println("Archive written; use it with -XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Archive creation failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
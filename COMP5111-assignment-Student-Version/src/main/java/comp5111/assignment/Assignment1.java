@@ -1,37 +1,161 @@
 package comp5111.assignment;
 
+import comp5111.assignment.instrument.Criterion;
+import comp5111.assignment.instrument.InstrumentedJarWriter;
+import comp5111.assignment.instrument.Instrumenter;
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.metrics.CountingOutputStream;
+import comp5111.assignment.metrics.Phase;
+import comp5111.assignment.metrics.PipelineMetrics;
+import comp5111.assignment.report.CoverageReport;
+import comp5111.assignment.runner.ExecutionData;
+import comp5111.assignment.runner.LoadedClasses;
+import comp5111.assignment.runner.RunOptions;
+import comp5111.assignment.runner.SuiteResult;
+import comp5111.assignment.runner.TestHistory;
+import comp5111.assignment.runner.TestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 public class Assignment1 {
     public static void main(String[] args) {
 
         /* check the arguments */
-        if (args.length <= 1 || (args[0].compareTo("0") != 0 && args[0].compareTo("1") != 0 && args[0].compareTo("2") != 0)) {
+        if (args.length <= 1 || Criterion.fromLevel(args[0]) == null) {
             System.err.println("Usage: java Assignment1 [coverage level] classnames ...");
             System.err.println("Usage: [coverage level] = 0 for statement coverage");
             System.err.println("Usage: [coverage level] = 1 for branch coverage");
             System.err.println("Usage: [coverage level] = 2 for line coverage");
+            System.err.println("Usage: [coverage level] = 3 for def-use pair coverage");
+            System.err.println("Usage: a classname that names a jar or directory instruments every class in it");
+            System.err.println("Usage: -D" + Settings.TESTS + "=<suite root>" + File.pathSeparator + "... "
+                + "compiled test suites to run, one directory or jar per suite");
+            System.err.println("Usage: -D" + Settings.OUTPUT + "=<jar or directory> where to write the instrumented "
+                + "classes; a directory gets one jar per package");
+            System.err.println("Usage: -D" + Settings.CLASS_PATH + "=<path> where to find the classes under test");
+            System.err.println("Usage: -D" + Settings.FORKS + "=<n> run suites in n worker JVMs instead of this one");
+            System.err.println("Usage: -D" + Settings.METRICS + "=<file> write phase timings as JSON");
+            System.err.println("Usage: -D" + Settings.EXEC + "=<file> write execution data for "
+                + CoverageReport.class.getName());
+            System.err.println("Usage: -D" + Settings.ATTRIBUTION + "=off|test|timed "
+                + "report the first test to reach each probe, and when");
+            System.err.println("Usage: -D" + Settings.BUFFERS + "=shared|thread "
+                + "record probes per thread when tests run the classes under test concurrently");
+            System.err.println("Usage: -D" + Settings.HISTORY + "=<file> keep the coverage of each test between runs");
+            System.err.println("Usage: -D" + Settings.TARGET + "=<percent> with history, run the tests that add the "
+                + "most coverage first and stop at this coverage");
+            System.err.println("Usage: -D" + Settings.LOADED + "=<file> only instrument the classes tests load, as "
+                + "listed in the file; recorded in a run of the uninstrumented tests if missing");
+            System.err.println("Usage: -XX:SharedArchiveFile=<archive> start faster with an archive made by "
+                + AppCdsArchive.class.getSimpleName());
             System.exit(0);
         }
 
-        // these args will be passed into soot.
-        String[] classNames = Arrays.copyOfRange(args, 1, args.length);
-
-        if (args[0].compareTo("0") == 0) {
-            // TODO invoke your statement coverage instrument function
-
-            // TODO run tests on instrumented classes to generate coverage report
+        // these args will be passed into soot: jars and directories as process dirs, the rest as classes
+        List<String> classNames = new ArrayList<>();
+        List<String> processDirs = new ArrayList<>();
+        for (String arg : Arrays.copyOfRange(args, 1, args.length)) {
+            if (new File(arg).exists()) {
+                processDirs.add(arg);
+            } else {
+                classNames.add(arg);
+            }
+        }
+        Criterion criterion = Criterion.fromLevel(args[0]);
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.setCriterion(criterion.getLabel());
 
-        } else if (args[0].compareTo("1") == 0) {
-            // TODO invoke your branch coverage instrument function
+        try {
+            run(criterion, classNames, processDirs, metrics, System.out);
 
-            // TODO run tests on instrumented classes to generate coverage report
+            File metricsFile = Settings.metrics();
+            if (metricsFile != null) {
+                metrics.writeJson(metricsFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Coverage measurement failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 
-        } else if (args[0].compareTo("2") == 0) {
-            // TODO invoke your line coverage instrument function
+    /**
+     * Instruments the classes under test, runs the suites against them and prints a coverage report per suite.
+     *
+     * @param criterion   the coverage criterion to measure
+     * @param classNames  the binary names of the top-level classes to instrument
+     * @param processDirs jars or directories whose classes are all instrumented
+     * @param metrics     where to record the time, CPU and output of each phase
+     * @param out         where to print the reports
+     * @throws IOException if instrumenting or running fails
+     */
+    static void run(Criterion criterion, List<String> classNames, List<String> processDirs, PipelineMetrics metrics,
+                    PrintStream out) throws IOException {
+        // instrument the classes under test, inner classes included, into a single jar or per-package shards
+        File jar = Settings.output();
+        Set<String> loaded = loadedClasses(classNames, processDirs, metrics);
+        Instrumenter.instrument(criterion, Settings.classPath(), classNames, processDirs, loaded, jar, metrics);
 
-            // TODO run tests on instrumented classes to generate coverage report
+        // run tests on instrumented classes to generate coverage report
+        File historyFile = Settings.history();
+        TestHistory history = historyFile == null ? null : TestHistory.load(historyFile);
+        RunOptions options = new RunOptions(Settings.attribution(), history, Settings.target());
+        List<SuiteResult> results = TestRunner.runSuites(jar, Settings.suiteRoots(), Settings.forks(), options,
+            metrics);
+        if (history != null) {
+            history.save(historyFile);
+        }
+        File execFile = Settings.exec();
+        if (execFile != null) {
+            ExecutionData.write(results, execFile);
+        }
+        if (!results.isEmpty()) {
+            // the probe metadata is only mapped in once there is something to report
+            ProbeTable probes = InstrumentedJarWriter.openProbeTable(jar);
+            for (SuiteResult result : results) {
+                try (PipelineMetrics.Span span = metrics.start(Phase.REPORT)) {
+                    CountingOutputStream counter = new CountingOutputStream(out);
+                    PrintStream report = new PrintStream(counter);
+                    CoverageReport.print(probes, result, report);
+                    report.flush();
+                    span.setBytes(counter.getCount());
+                }
+            }
+        }
+    }
 
+    /**
+     * Reads the classes the tests load, or records them with a run of the tests against the original classes.
+     *
+     * @return the binary names of the loaded classes under test, {@code null} if every class is to be instrumented
+     */
+    private static Set<String> loadedClasses(List<String> classNames, List<String> processDirs,
+                                             PipelineMetrics metrics) throws IOException {
+        File loadedFile = Settings.loaded();
+        if (loadedFile == null) {
+            return null;
+        }
+        if (loadedFile.isFile()) {
+            return LoadedClasses.read(loadedFile);
+        }
+        List<String> candidates = ClassFiles.withNestedClasses(Settings.classPath(), classNames);
+        for (String dir : processDirs) {
+            candidates.addAll(ClassFiles.list(new File(dir)));
+        }
+        StringBuilder classPath = new StringBuilder(Settings.classPath());
+        for (String dir : processDirs) {
+            classPath.append(File.pathSeparator).append(dir);
+        }
+        Set<String> loaded;
+        try (PipelineMetrics.Span span = metrics.start(Phase.LOAD_RECORDING)) {
+            loaded = LoadedClasses.record(Settings.suiteRoots(), classPath.toString(), candidates);
         }
+        LoadedClasses.write(loadedFile, loaded);
+        return loaded;
     }
 }
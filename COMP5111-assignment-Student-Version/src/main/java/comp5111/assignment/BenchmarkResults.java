@@ -0,0 +1,146 @@
+package comp5111.assignment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * <p>Figures of a pipeline benchmark, keyed like {@code statement.warm.transform.cpuMillis}, with properties files as
+ * their stored form. Keys are kept sorted, so two result files can be diffed line by line.</p>
+ */
+final class BenchmarkResults {
+    static final String WALL_MILLIS = "wallMillis";
+    static final String CPU_MILLIS = "cpuMillis";
+    static final String BYTES = "bytes";
+    static final String PEAK_RSS_BYTES = "peakRssBytes";
+
+    // differences in time below this are noise, whatever the threshold
+    private static final double NOISE_MILLIS = 5;
+
+    private final Map<String, Double> figures = new TreeMap<>();
+
+    void put(final String key, final double value) {
+        figures.put(key, value);
+    }
+
+    Double get(final String key) {
+        return figures.get(key);
+    }
+
+    /**
+     * @param file a file written by {@link #save(File)}
+     * @return the results in it
+     * @throws IOException if the file cannot be read
+     */
+    static BenchmarkResults load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        final BenchmarkResults results = new BenchmarkResults();
+        for (final String key : properties.stringPropertyNames()) {
+            results.put(key, Double.parseDouble(properties.getProperty(key)));
+        }
+        return results;
+    }
+
+    /**
+     * Writes the results, replacing any existing file.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    void save(final File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+            StandardCharsets.ISO_8859_1))) {
+            for (final Map.Entry<String, Double> figure : figures.entrySet()) {
+                out.println(figure.getKey() + "=" + format(figure.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Adds the figures of one benchmark JVM: those of its first run as {@code <label>.cold.*}, the median of the
+     * others as {@code <label>.warm.*}, and its peak RSS.
+     *
+     * @param label      the criterion the JVM measured
+     * @param runs       the figures of each run, keyed {@code <run>.<phase>.<figure>}, and {@link #PEAK_RSS_BYTES}
+     * @param iterations the number of runs
+     */
+    void addRuns(final String label, final BenchmarkResults runs, final int iterations) {
+        for (final Map.Entry<String, Double> figure : runs.figures.entrySet()) {
+            final String key = figure.getKey();
+            if (key.equals(PEAK_RSS_BYTES)) {
+                put(label + "." + key, figure.getValue());
+            } else if (key.startsWith("0.")) {
+                final String name = key.substring(2);
+                put(label + ".cold." + name, figure.getValue());
+                if (iterations > 1) {
+                    final double[] warm = new double[iterations - 1];
+                    for (int i = 1; i < iterations; i++) {
+                        final Double value = runs.get(i + "." + name);
+                        warm[i - 1] = value == null ? 0 : value;
+                    }
+                    put(label + ".warm." + name, median(warm));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares these results with a baseline.
+     *
+     * @param baseline  earlier results
+     * @param threshold how much worse a figure may get, in percent
+     * @return a description of every figure that got worse by more than the threshold
+     */
+    List<String> regressions(final BenchmarkResults baseline, final double threshold) {
+        final List<String> regressions = new ArrayList<>();
+        for (final Map.Entry<String, Double> figure : baseline.figures.entrySet()) {
+            final String key = figure.getKey();
+            final Double current = get(key);
+            final double base = figure.getValue();
+            // negative figures mean the platform could not measure them
+            if (current == null || base < 0 || current < 0 || current <= base * (1 + threshold / 100)) {
+                continue;
+            }
+            final boolean isTime = key.endsWith(WALL_MILLIS) || key.endsWith(CPU_MILLIS);
+            if (isTime && current - base < NOISE_MILLIS) {
+                continue;
+            }
+            regressions.add(String.format(Locale.ROOT, "%s: %s -> %s (%+.1f%%)", key, format(base),
+                format(current), base == 0 ? 100.0 : 100.0 * (current - base) / base));
+        }
+        return regressions;
+    }
+
+    void print(final PrintStream out) {
+        for (final Map.Entry<String, Double> figure : figures.entrySet()) {
+            out.println(figure.getKey() + "\t" + format(figure.getValue()));
+        }
+    }
+
+    private static double median(final double[] values) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static String format(final double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,111 @@
+package comp5111.assignment;
+
+import comp5111.assignment.instrument.Criterion;
+import comp5111.assignment.metrics.Phase;
+import comp5111.assignment.metrics.PipelineMetrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>One benchmark JVM started by {@link PipelineBenchmark}: runs the whole {@link Assignment1} flow a number of
+ * times for one criterion and writes the figures of every run to a file. The reports are generated but discarded.</p>
+ */
+public class BenchmarkRun {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final String STATUS_FILE = "/proc/self/status";
+    private static final String PEAK_RSS = "VmHWM:";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: java BenchmarkRun [coverage level] iterations resultfile classnames ...");
+            System.exit(0);
+        }
+        Criterion criterion = Criterion.fromLevel(args[0]);
+        int iterations = Integer.parseInt(args[1]);
+        File resultFile = new File(args[2]);
+        List<String> classNames = new ArrayList<>();
+        List<String> processDirs = new ArrayList<>();
+        for (String arg : Arrays.copyOfRange(args, 3, args.length)) {
+            if (new File(arg).exists()) {
+                processDirs.add(arg);
+            } else {
+                classNames.add(arg);
+            }
+        }
+
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        BenchmarkResults results = new BenchmarkResults();
+        for (int i = 0; i < iterations; i++) {
+            PipelineMetrics metrics = new PipelineMetrics();
+            metrics.setCriterion(criterion.getLabel());
+            long cpu = processCpuNanos();
+            long start = System.nanoTime();
+            Assignment1.run(criterion, classNames, processDirs, metrics, discard);
+            long wall = System.nanoTime() - start;
+
+            String run = i + ".";
+            // the first run counts from JVM start, so class loading before the pipeline is included
+            long firstClass = metrics.getTimeToFirstClassNanos();
+            results.put(run + "total.firstClassMillis", firstClass < 0 ? -1
+                : firstClass / NANOS_PER_MILLI + (i == 0 ? metrics.getStartUptimeMillis() : 0));
+            results.put(run + "total." + BenchmarkResults.WALL_MILLIS, wall / NANOS_PER_MILLI);
+            results.put(run + "total." + BenchmarkResults.CPU_MILLIS,
+                cpu < 0 ? -1 : (processCpuNanos() - cpu) / NANOS_PER_MILLI);
+            for (Phase phase : Phase.values()) {
+                String prefix = run + phase.getLabel() + ".";
+                results.put(prefix + BenchmarkResults.WALL_MILLIS, metrics.getNanos(phase) / NANOS_PER_MILLI);
+                results.put(prefix + BenchmarkResults.CPU_MILLIS, metrics.getCpuNanos(phase) / NANOS_PER_MILLI);
+                results.put(prefix + BenchmarkResults.BYTES, metrics.getBytes(phase));
+            }
+        }
+        results.put(BenchmarkResults.PEAK_RSS_BYTES, peakRssBytes());
+        results.save(resultFile);
+    }
+
+    /**
+     * @return the CPU time of this JVM in nanoseconds, -1 if the JVM does not tell
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1;
+    }
+
+    /**
+     * @return the peak resident set size of this JVM in bytes, -1 where the kernel does not report it
+     */
+    private static long peakRssBytes() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(STATUS_FILE),
+            StandardCharsets.US_ASCII))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.startsWith(PEAK_RSS)) {
+                    // e.g. "VmHWM:     123456 kB"
+                    return Long.parseLong(line.substring(PEAK_RSS.length()).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
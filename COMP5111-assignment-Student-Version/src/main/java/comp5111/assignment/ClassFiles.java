@@ -0,0 +1,89 @@
+package comp5111.assignment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * <p>Finds class files in class path entries, i.e. directories and jars.</p>
+ */
+public final class ClassFiles {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private ClassFiles() {
+    }
+
+    /**
+     * Lists the binary names of all classes in a class path entry.
+     *
+     * @param entry a directory or a jar file
+     * @return the class names in alphabetical order, empty if the entry does not exist
+     * @throws IOException if a jar cannot be read
+     */
+    public static List<String> list(final File entry) throws IOException {
+        final List<String> names = new ArrayList<>();
+        if (entry.isDirectory()) {
+            collect(entry, "", names);
+        } else if (entry.isFile()) {
+            try (JarFile jar = new JarFile(entry)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    if (name.endsWith(CLASS_SUFFIX) && !name.startsWith("META-INF/")) {
+                        names.add(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void collect(final File dir, final String packagePrefix, final List<String> names) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                collect(file, packagePrefix + name + '.', names);
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                names.add(packagePrefix + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+
+    /**
+     * Adds the nested classes of the given classes, as found on the class path.
+     * Soot only loads the classes it is told about, so without this the inner classes of e.g. {@code ToolBox} would
+     * be left uninstrumented.
+     *
+     * @param classPath  the class path, entries separated by {@link File#pathSeparator}
+     * @param classNames the binary names of top-level classes
+     * @return the given classes and all their nested classes, in alphabetical order
+     * @throws IOException if a jar on the class path cannot be read
+     */
+    public static List<String> withNestedClasses(final String classPath, final List<String> classNames)
+        throws IOException {
+        final TreeSet<String> result = new TreeSet<>(classNames);
+        for (final String entry : classPath.split(File.pathSeparator)) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            for (final String name : list(new File(entry))) {
+                final int nested = name.indexOf('$');
+                if (nested > 0 && classNames.contains(name.substring(0, nested))) {
+                    result.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+}
@@ -0,0 +1,57 @@
+package comp5111.assignment;
+
+import comp5111.assignment.instrument.InstrumentedJarWriter;
+import comp5111.assignment.instrument.Mutator;
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.metrics.PipelineMetrics;
+import comp5111.assignment.report.MutationReport;
+import comp5111.assignment.runner.MutationAnalysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Grades test suites by mutation score: mutates the classes under test once, with every mutant compiled in, and
+ * runs each suite against every mutant.</p>
+ */
+public class MutationTesting {
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java MutationTesting classnames ...");
+            System.err.println("Usage: a classname that names a jar or directory mutates every class in it");
+            System.err.println("Usage: -D" + Settings.TESTS + "=<suite root>" + File.pathSeparator + "... "
+                + "compiled test suites to grade, one directory or jar per suite");
+            System.err.println("Usage: -D" + Settings.MUTANTS + "=<jar or directory> where to write the mutated "
+                + "classes; a directory gets one jar per package");
+            System.err.println("Usage: -D" + Settings.CLASS_PATH + "=<path> where to find the classes under test");
+            System.err.println("Usage: -D" + Settings.THREADS + "=<n> run n mutants at the same time");
+            System.exit(0);
+        }
+
+        // same as Assignment1: jars and directories as process dirs, the rest as classes
+        List<String> classNames = new ArrayList<>();
+        List<String> processDirs = new ArrayList<>();
+        for (String arg : args) {
+            if (new File(arg).exists()) {
+                processDirs.add(arg);
+            } else {
+                classNames.add(arg);
+            }
+        }
+
+        try {
+            File jar = Settings.mutants();
+            int mutants = Mutator.mutate(Settings.classPath(), classNames, processDirs, jar, new PipelineMetrics());
+            System.err.println(mutants + " mutants written to " + jar);
+            ProbeTable table = InstrumentedJarWriter.openProbeTable(jar);
+            for (File suiteRoot : Settings.suiteRoots()) {
+                MutationReport.print(table, MutationAnalysis.run(jar, suiteRoot, Settings.threads()), System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Mutation testing failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package comp5111.assignment;
+
+import comp5111.assignment.instrument.Criterion;
+import comp5111.assignment.runner.ClassDataSharing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Macro-benchmark of the whole {@link Assignment1} flow: instrumenting, running every suite and reporting, for
+ * statement, branch and line coverage.</p>
+ *
+ * <p>Each criterion gets a fresh JVM running the flow several times (see {@link BenchmarkRun}). The first run is the
+ * cold one: class loading, JIT compilation and Soot's start-up all count. The median of the remaining runs is the
+ * warm figure. For each run the benchmark records wall time, CPU time and bytes written, in total and per
+ * {@link comp5111.assignment.metrics.Phase phase}, plus the peak RSS of each JVM.</p>
+ *
+ * <p>The results are written as a properties file. Given a baseline file, every figure is compared with it and the
+ * benchmark exits with status 2 if one got worse by more than the threshold; a missing baseline is written from this
+ * run.</p>
+ */
+public class PipelineBenchmark {
+    private static final String[] LEVELS = {"0", "1", "2"};
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java PipelineBenchmark classnames ...");
+            System.err.println("Usage: takes the same classnames and -Dcomp5111.* settings as Assignment1, which are "
+                + "passed on to every run");
+            System.err.println("Usage: -D" + Settings.BENCHMARK_ITERATIONS + "=<n> runs per JVM, the first cold");
+            System.err.println("Usage: -D" + Settings.BENCHMARK_RESULTS + "=<file> where to write the results");
+            System.err.println("Usage: -D" + Settings.BENCHMARK_BASELINE + "=<file> results to compare with, "
+                + "written if missing");
+            System.err.println("Usage: -D" + Settings.BENCHMARK_THRESHOLD + "=<percent> allowed regression");
+            System.exit(0);
+        }
+
+        int iterations = Settings.benchmarkIterations();
+        BenchmarkResults results = new BenchmarkResults();
+        try {
+            for (String level : LEVELS) {
+                Criterion criterion = Criterion.fromLevel(level);
+                File runFile = File.createTempFile("benchmark-" + criterion.getLabel(), ".properties");
+                try {
+                    runJvm(level, iterations, runFile, args);
+                    results.addRuns(criterion.getLabel(), BenchmarkResults.load(runFile), iterations);
+                } finally {
+                    runFile.delete();
+                }
+            }
+            results.print(System.out);
+            results.save(Settings.benchmarkResults());
+
+            File baselineFile = Settings.benchmarkBaseline();
+            if (baselineFile == null) {
+                return;
+            }
+            if (!baselineFile.exists()) {
+                results.save(baselineFile);
+                System.err.println("Baseline written to " + baselineFile);
+                return;
+            }
+            List<String> regressions = results.regressions(BenchmarkResults.load(baselineFile),
+                Settings.benchmarkThreshold());
+            for (String regression : regressions) {
+                System.err.println("Regression: " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                System.exit(2);
+            }
+        } catch (IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void runJvm(String level, int iterations, File runFile, String[] args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        // with -XX:SharedArchiveFile on the benchmark, the runs measure the archive
+        command.addAll(ClassDataSharing.inheritedOptions());
+        command.addAll(Settings.forwarded());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchmarkRun.class.getName());
+        command.add(level);
+        command.add(String.valueOf(iterations));
+        command.add(runFile.getAbsolutePath());
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        try {
+            int status = process.waitFor();
+            if (status != 0) {
+                throw new IOException("Benchmark JVM for level " + level + " exited with " + status);
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while benchmarking level " + level, e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package comp5111.assignment;
+
+import comp5111.assignment.runner.Attribution;
+import comp5111.assignment.runtime.Probes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Settings of the coverage tool that do not fit on the {@code Assignment1} command line.
+ * They are read from system properties, e.g. {@code java -Dcomp5111.tests=target/randoop0 ...}.</p>
+ */
+final class Settings {
+    static final String CLASS_PATH = "comp5111.classpath";
+    static final String OUTPUT = "comp5111.output";
+    static final String TESTS = "comp5111.tests";
+    static final String FORKS = "comp5111.forks";
+    static final String METRICS = "comp5111.metrics";
+    static final String ATTRIBUTION = "comp5111.attribution";
+    static final String EXEC = "comp5111.exec";
+    static final String HISTORY = "comp5111.history";
+    static final String TARGET = "comp5111.target";
+    static final String LOADED = "comp5111.loaded";
+    static final String MUTANTS = "comp5111.mutants";
+    static final String THREADS = "comp5111.threads";
+    static final String BENCHMARK_ITERATIONS = "comp5111.benchmark.iterations";
+    static final String BENCHMARK_RESULTS = "comp5111.benchmark.results";
+    static final String BENCHMARK_BASELINE = "comp5111.benchmark.baseline";
+    static final String BENCHMARK_THRESHOLD = "comp5111.benchmark.threshold";
+    static final String CDS_ARCHIVE = "comp5111.cds";
+    private static final String PREFIX = "comp5111.";
+    // read by the probe runtime itself, in this JVM and in the workers
+    static final String BUFFERS = Probes.BUFFERS_PROPERTY;
+
+    private Settings() {
+    }
+
+    /**
+     * @return the class path holding the classes under test, defaults to the class path of this JVM
+     */
+    static String classPath() {
+        return System.getProperty(CLASS_PATH, System.getProperty("java.class.path"));
+    }
+
+    /**
+     * @return the jar the instrumented classes are written to; a path not ending in {@code .jar} is a directory that
+     * gets one jar per package
+     */
+    static File output() {
+        return new File(System.getProperty(OUTPUT, "sootOutput" + File.separator + "instrumented.jar"));
+    }
+
+    /**
+     * @return the roots of the compiled test suites, one directory or jar per suite
+     */
+    static List<File> suiteRoots() {
+        final List<File> roots = new ArrayList<>();
+        for (final String root : System.getProperty(TESTS, "").split(File.pathSeparator)) {
+            if (!root.isEmpty()) {
+                roots.add(new File(root));
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * @return the number of worker JVMs to run suites in, 0 to run them in this JVM
+     */
+    static int forks() {
+        return Integer.getInteger(FORKS, 0);
+    }
+
+    /**
+     * @return the file to write the JSON summary of the pipeline metrics to, {@code null} for none
+     */
+    static File metrics() {
+        final String file = System.getProperty(METRICS);
+        return file == null || file.isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * @return the file to write the execution data of the suites to, {@code null} for none
+     */
+    static File exec() {
+        final String file = System.getProperty(EXEC);
+        return file == null || file.isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * @return what to record about the first test to reach each probe, defaults to nothing
+     */
+    static Attribution attribution() {
+        return Attribution.parse(System.getProperty(ATTRIBUTION, "off"));
+    }
+
+    /**
+     * @return the file keeping the coverage of each test between runs, {@code null} for none
+     */
+    static File history() {
+        final String file = System.getProperty(HISTORY);
+        return file == null || file.isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * @return the coverage in percent at which a suite with history stops, 0 to run whole suites
+     */
+    static double target() {
+        return Double.parseDouble(System.getProperty(TARGET, "0"));
+    }
+
+    /**
+     * @return the file listing the classes under test that tests load, {@code null} to instrument every class
+     */
+    static File loaded() {
+        final String file = System.getProperty(LOADED);
+        return file == null || file.isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * @return the jar the mutated classes are written to; a path not ending in {@code .jar} is a directory that gets
+     * one jar per package
+     */
+    static File mutants() {
+        return new File(System.getProperty(MUTANTS, "sootOutput" + File.separator + "mutants.jar"));
+    }
+
+    /**
+     * @return the number of mutants to run at the same time, defaults to the number of processors
+     */
+    static int threads() {
+        return Integer.getInteger(THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the number of pipeline runs per benchmark JVM, the first of them cold; defaults to 5
+     */
+    static int benchmarkIterations() {
+        return Math.max(1, Integer.getInteger(BENCHMARK_ITERATIONS, 5));
+    }
+
+    /**
+     * @return the file to write the benchmark results to
+     */
+    static File benchmarkResults() {
+        return new File(System.getProperty(BENCHMARK_RESULTS, "benchmark.properties"));
+    }
+
+    /**
+     * @return the benchmark results to compare against, {@code null} for none; written if it does not exist yet
+     */
+    static File benchmarkBaseline() {
+        final String file = System.getProperty(BENCHMARK_BASELINE);
+        return file == null || file.isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * @return how much worse than the baseline a benchmark figure may get, in percent; defaults to 10
+     */
+    static double benchmarkThreshold() {
+        return Double.parseDouble(System.getProperty(BENCHMARK_THRESHOLD, "10"));
+    }
+
+    /**
+     * @return the AppCDS archive to create, defaults to one next to the default output
+     */
+    static File cdsArchive() {
+        return new File(System.getProperty(CDS_ARCHIVE, "sootOutput" + File.separator + "comp5111.jsa"));
+    }
+
+    /**
+     * @return every setting of this JVM as a {@code -D} option, to pass on to a JVM that runs the tool again
+     */
+    static List<String> forwarded() {
+        final List<String> options = new ArrayList<>();
+        for (final String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PREFIX)) {
+                options.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        return options;
+    }
+}
@@ -1,9 +1,28 @@
 package comp5111.assignment.cut;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Array;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static comp5111.assignment.cut.ToolBox.StringTools.EMPTY;
@@ -15,65 +34,111 @@ public class ToolBox {
      * <p>This class tries to handle {@code null} input gracefully.
      * An exception will not be thrown for a {@code null} input.
      * Each method documents its behavior in more detail.</p>
+     *
+     * <p>To pick one of several supported locales for a client's preferences, compile them into a
+     * {@link LocaleNegotiator}.</p>
      */
     public static class LocaleTools {
         /**
-         * Checks whether the given String is a ISO 3166 alpha-2 country code.
+         * Number of distinct Strings whose Locale {@link #toLocale(String)} keeps.
+         */
+        static final int LOCALE_CACHE_SIZE = 1024;
+        private static final ConcurrentHashMap<String, CachedLocale> LOCALES = new ConcurrentHashMap<>();
+        private static final Object LOCALE_EVICTION_LOCK = new Object();
+        // guarded by LOCALE_EVICTION_LOCK
+        private static Iterator<Map.Entry<String, CachedLocale>> localeHand;
+
+        /**
+         * Checks whether the given range of a String is a ISO 3166 alpha-2 country code.
          *
-         * @param str the String to check
-         * @return true, is the given String is a ISO 3166 compliant country code.
+         * @param str  the String to check
+         * @param from the index of the first char of the range
+         * @param to   the index after the last char of the range
+         * @return true, is the given range is a ISO 3166 compliant country code.
          */
-        private static boolean isISO3166CountryCode(final String str) {
-            return StringTools.isAllUpperCase(str) && str.length() == 2;
+        private static boolean isISO3166CountryCode(final String str, final int from, final int to) {
+            if (to - from != 2) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (!Character.isUpperCase(str.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
-         * Checks whether the given String is a ISO 639 compliant language code.
+         * Checks whether the given range of a String is a ISO 639 compliant language code.
          *
-         * @param str the String to check.
-         * @return true, if the given String is a ISO 639 compliant language code.
+         * @param str  the String to check
+         * @param from the index of the first char of the range
+         * @param to   the index after the last char of the range
+         * @return true, if the given range is a ISO 639 compliant language code.
          */
-        private static boolean isISO639LanguageCode(final String str) {
-            return StringTools.isAllLowerCase(str) && (str.length() == 2 || str.length() == 3);
+        private static boolean isISO639LanguageCode(final String str, final int from, final int to) {
+            if (to - from != 2 && to - from != 3) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (!Character.isLowerCase(str.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
-         * Checks whether the given String is a UN M.49 numeric area code.
+         * Checks whether the given range of a String is a UN M.49 numeric area code.
          *
-         * @param str the String to check
-         * @return true, is the given String is a UN M.49 numeric area code.
+         * @param str  the String to check
+         * @param from the index of the first char of the range
+         * @param to   the index after the last char of the range
+         * @return true, is the given range is a UN M.49 numeric area code.
          */
-        private static boolean isNumericAreaCode(final String str) {
-            return StringTools.isNumeric(str) && str.length() == 3;
+        private static boolean isNumericAreaCode(final String str, final int from, final int to) {
+            if (to - from != 3) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (!Character.isDigit(str.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
-         * Tries to parse a locale from the given String.
+         * Tries to parse a locale from the given String, which does not start with an underscore. The String is
+         * only cut into parts once it is known to be valid.
          *
          * @param str the String to parse a locale from.
          * @return a Locale instance parsed from the given String.
          * @throws IllegalArgumentException if the given String can not be parsed.
          */
         private static Locale parseLocale(final String str) {
-            if (isISO639LanguageCode(str)) {
-                return new Locale(str);
+            final int len = str.length();
+            final int first = str.indexOf('_');
+            if (first < 0) {
+                if (isISO639LanguageCode(str, 0, len)) {
+                    return new Locale(str);
+                }
+                throw new IllegalArgumentException("Invalid locale format: " + str);
             }
 
-            final String[] segments = str.split("_", -1);
-            final String language = segments[0];
-            if (segments.length == 2) {
-                final String country = segments[1];
-                if (isISO639LanguageCode(language) && isISO3166CountryCode(country) ||
-                    isNumericAreaCode(country)) {
-                    return new Locale(language, country);
+            final int second = str.indexOf('_', first + 1);
+            if (second < 0) {
+                if (isISO639LanguageCode(str, 0, first) && isISO3166CountryCode(str, first + 1, len) ||
+                    isNumericAreaCode(str, first + 1, len)) {
+                    return new Locale(str.substring(0, first), str.substring(first + 1));
                 }
-            } else if (segments.length == 3) {
-                final String country = segments[1];
-                final String variant = segments[2];
-                if (isISO639LanguageCode(language) &&
-                    (country.isEmpty() || isISO3166CountryCode(country) || isNumericAreaCode(country)) &&
-                    !variant.isEmpty()) {
-                    return new Locale(language, country, variant);
+            } else if (str.indexOf('_', second + 1) < 0) {
+                if (isISO639LanguageCode(str, 0, first) &&
+                    (second == first + 1 || isISO3166CountryCode(str, first + 1, second) ||
+                        isNumericAreaCode(str, first + 1, second)) &&
+                    second + 1 < len) {
+                    return new Locale(str.substring(0, first), str.substring(first + 1, second),
+                        str.substring(second + 1));
                 }
             }
             throw new IllegalArgumentException("Invalid locale format: " + str);
@@ -104,6 +169,11 @@ public class ToolBox {
          * The length must be correct.
          * </p>
          *
+         * <p>Valid Strings are parsed once: the Locales of up to {@value #LOCALE_CACHE_SIZE} distinct Strings are
+         * cached, so converting the same String again is a single hash lookup and returns the same instance. Beyond
+         * that, the least recently used Strings are evicted as in {@link RegExTools.PatternCache}, so a stream of
+         * one-off Strings cannot crowd out the ones in use. Invalid Strings are not cached.</p>
+         *
          * @param str the locale String to convert, null returns null
          * @return a Locale, null if null input
          * @throws IllegalArgumentException if the string is an invalid format
@@ -113,10 +183,58 @@ public class ToolBox {
             if (str == null) {
                 return null;
             }
+            final CachedLocale cached = LOCALES.get(str);
+            if (cached != null) {
+                if (!cached.referenced) {
+                    cached.referenced = true;
+                }
+                return cached.locale;
+            }
+            final CachedLocale parsed = new CachedLocale(parse(str));
+            final CachedLocale raced = LOCALES.putIfAbsent(str, parsed);
+            if (raced != null) {
+                return raced.locale;
+            }
+            if (LOCALES.size() > LOCALE_CACHE_SIZE) {
+                evictLocales();
+            }
+            return parsed.locale;
+        }
+
+        /**
+         * Evicts with the CLOCK scheme of {@link RegExTools.PatternCache} until the cache is back within its size.
+         */
+        private static void evictLocales() {
+            synchronized (LOCALE_EVICTION_LOCK) {
+                while (LOCALES.size() > LOCALE_CACHE_SIZE) {
+                    if (localeHand == null || !localeHand.hasNext()) {
+                        localeHand = LOCALES.entrySet().iterator();
+                    }
+                    final Map.Entry<String, CachedLocale> candidate = localeHand.next();
+                    final CachedLocale entry = candidate.getValue();
+                    if (entry.referenced) {
+                        entry.referenced = false;
+                    } else {
+                        LOCALES.remove(candidate.getKey(), entry);
+                    }
+                }
+            }
+        }
+
+        private static final class CachedLocale {
+            private final Locale locale;
+            private volatile boolean referenced;
+
+            CachedLocale(final Locale locale) {
+                this.locale = locale;
+            }
+        }
+
+        private static Locale parse(final String str) {
             if (str.isEmpty()) { // LANG-941 - JDK 8 introduced an empty locale where all fields are blank
                 return new Locale(EMPTY, EMPTY);
             }
-            if (str.contains("#")) { // LANG-879 - Cannot handle Java 7 script & extensions
+            if (str.indexOf('#') >= 0) { // LANG-879 - Cannot handle Java 7 script & extensions
                 throw new IllegalArgumentException("Invalid locale format: " + str);
             }
             final int len = str.length();
@@ -148,6 +266,427 @@ public class ToolBox {
             return parseLocale(str);
         }
 
+        /**
+         * <p>A precompiled index of supported locales to pick the best one for a client's weighted preferences, as
+         * sent in an HTTP {@code Accept-Language} header.</p>
+         *
+         * <p>Each supported locale is indexed under its language, country and variant, and, unless another
+         * supported locale owns those keys already, under its language and country and under its language alone.
+         * A preference is looked up by its full tag, then without its variant, then by its language alone, so
+         * {@code en-AU} falls back to a supported {@code en}, or else to the first supported English locale. Each
+         * step is one probe of an open-addressing table, hashed and compared in place on the header chars, so the
+         * cost does not depend on the number of supported locales and nothing is allocated per preference.</p>
+         *
+         * <p>The preference with the highest {@code q} weight that has a match wins; of equal weights, the one
+         * listed first. {@code *} matches the first supported locale. Preferences with {@code q=0} or a malformed
+         * weight are ignored, and script subtags and extensions are skipped. Tags are compared regardless of case,
+         * with {@code '-'} and {@code '_'} as separators. The withdrawn codes {@code iw}, {@code in} and
+         * {@code ji}, which {@link Locale#getLanguage()} reports for Hebrew, Indonesian and Yiddish before Java 17,
+         * match their current codes {@code he}, {@code id} and {@code yi} either way.</p>
+         *
+         * <pre>
+         * LocaleNegotiator site = LocaleNegotiator.compile(Locale.US, Locale.UK, Locale.GERMANY);
+         * site.negotiate("fr-CH, fr;q=0.9, en;q=0.8, de;q=0.7") = en_US
+         * site.negotiate("de-AT;q=0.9, en-GB;q=0.5")           = de_DE
+         * site.negotiate("fr")                                  = null
+         * </pre>
+         *
+         * <p>A negotiator is immutable and safe to share between threads.</p>
+         */
+        public static final class LocaleNegotiator {
+            private static final int MAX_WEIGHT = 1000;
+            // Locale keeps reporting these languages by their withdrawn ISO 639 codes, at least before Java 17
+            private static final String[] LEGACY_LANGUAGES = {"iw", "in", "ji"};
+            private static final String[] CURRENT_LANGUAGES = {"he", "id", "yi"};
+
+            private final List<Locale> supported;
+            // keys are lower case with '-' separators; the capacity is a power of two, at most half full
+            private final String[] keys;
+            private final Locale[] values;
+
+            private LocaleNegotiator(final List<Locale> supported) {
+                this.supported = supported;
+                int capacity = 4;
+                while (capacity < supported.size() * 6) {
+                    capacity <<= 1;
+                }
+                keys = new String[capacity];
+                values = new Locale[capacity];
+                // exact keys first, so a supported locale always wins its own tag over a fallback
+                for (final Locale locale : supported) {
+                    put(key(currentLanguage(locale.getLanguage()), locale.getCountry(), locale.getVariant()), locale);
+                }
+                for (final Locale locale : supported) {
+                    if (!locale.getVariant().isEmpty()) {
+                        put(key(currentLanguage(locale.getLanguage()), locale.getCountry(), EMPTY), locale);
+                    }
+                    if (!locale.getCountry().isEmpty() || !locale.getVariant().isEmpty()) {
+                        put(key(currentLanguage(locale.getLanguage()), EMPTY, EMPTY), locale);
+                    }
+                }
+            }
+
+            /**
+             * <p>Compiles the index of the supported locales.</p>
+             *
+             * @param supported the supported locales, in order of preference; null entries are ignored
+             * @return the negotiator, matching nothing for {@code null} input
+             */
+            public static LocaleNegotiator compile(final Locale... supported) {
+                return compile(supported == null ? null : Arrays.asList(supported));
+            }
+
+            /**
+             * <p>Compiles the index of the supported locales.</p>
+             *
+             * @param supported the supported locales, in order of preference; null entries are ignored
+             * @return the negotiator, matching nothing for {@code null} input
+             */
+            public static LocaleNegotiator compile(final Collection<Locale> supported) {
+                final List<Locale> locales = new ArrayList<>();
+                if (supported != null) {
+                    for (final Locale locale : supported) {
+                        if (locale != null) {
+                            locales.add(locale);
+                        }
+                    }
+                }
+                return new LocaleNegotiator(Collections.unmodifiableList(locales));
+            }
+
+            private static String key(final String language, final String country, final String variant) {
+                final StringBuilder key = new StringBuilder(language);
+                if (!country.isEmpty() || !variant.isEmpty()) {
+                    key.append('-').append(country);
+                }
+                if (!variant.isEmpty()) {
+                    key.append('-').append(variant);
+                }
+                for (int i = 0; i < key.length(); i++) {
+                    key.setCharAt(i, normalize(key.charAt(i)));
+                }
+                return key.toString();
+            }
+
+            /**
+             * @return the current code of a language that Locale may report by its withdrawn code, else the code
+             */
+            private static String currentLanguage(final String language) {
+                for (int i = 0; i < LEGACY_LANGUAGES.length; i++) {
+                    if (LEGACY_LANGUAGES[i].equalsIgnoreCase(language)) {
+                        return CURRENT_LANGUAGES[i];
+                    }
+                }
+                return language;
+            }
+
+            /**
+             * @return the current code of the language in {@code [start, end)} if it is a withdrawn one, else null
+             */
+            private static String currentLanguage(final CharSequence cs, final int start, final int end) {
+                if (end - start != 2) {
+                    return null;
+                }
+                for (int i = 0; i < LEGACY_LANGUAGES.length; i++) {
+                    final String legacy = LEGACY_LANGUAGES[i];
+                    if (normalize(cs.charAt(start)) == legacy.charAt(0)
+                        && normalize(cs.charAt(start + 1)) == legacy.charAt(1)) {
+                        return CURRENT_LANGUAGES[i];
+                    }
+                }
+                return null;
+            }
+
+            private static char normalize(final char c) {
+                if (c >= 'A' && c <= 'Z') {
+                    return (char) (c + ('a' - 'A'));
+                }
+                return c == '_' ? '-' : c;
+            }
+
+            private static int slot(final int hash, final int mask) {
+                return (hash ^ hash >>> 16) & mask;
+            }
+
+            private void put(final String key, final Locale locale) {
+                final int mask = keys.length - 1;
+                int slot = slot(key.hashCode(), mask);
+                while (keys[slot] != null) {
+                    if (keys[slot].equals(key)) {
+                        return;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = locale;
+            }
+
+            /**
+             * @return the locale indexed under the key made of the given language range of {@code language} and the
+             * other ranges of {@code cs}, as {@link #key} would make it, null if none
+             */
+            private Locale get(final CharSequence language, final int languageStart, final int languageEnd,
+                               final CharSequence cs, final int countryStart, final int countryEnd,
+                               final int variantStart, final int variantEnd) {
+                final boolean hasVariant = variantStart < variantEnd;
+                final boolean hasCountry = countryStart < countryEnd || hasVariant;
+                // the hash of the key String, computed without building it
+                int hash = hash(0, language, languageStart, languageEnd);
+                if (hasCountry) {
+                    hash = hash(hash * 31 + '-', cs, countryStart, countryEnd);
+                }
+                if (hasVariant) {
+                    hash = hash(hash * 31 + '-', cs, variantStart, variantEnd);
+                }
+                final int mask = keys.length - 1;
+                for (int slot = slot(hash, mask); keys[slot] != null; slot = (slot + 1) & mask) {
+                    final String key = keys[slot];
+                    int at = matches(key, 0, language, languageStart, languageEnd);
+                    if (hasCountry) {
+                        at = matches(key, at, '-');
+                        at = matches(key, at, cs, countryStart, countryEnd);
+                    }
+                    if (hasVariant) {
+                        at = matches(key, at, '-');
+                        at = matches(key, at, cs, variantStart, variantEnd);
+                    }
+                    if (at == key.length()) {
+                        return values[slot];
+                    }
+                }
+                return null;
+            }
+
+            private static int hash(int hash, final CharSequence cs, final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    hash = hash * 31 + normalize(cs.charAt(i));
+                }
+                return hash;
+            }
+
+            /**
+             * @return the index in {@code key} after the normalized range of {@code cs} if it matches at {@code at},
+             * else -1
+             */
+            private static int matches(final String key, final int at, final CharSequence cs, final int start,
+                                       final int end) {
+                if (at < 0 || key.length() - at < end - start) {
+                    return -1;
+                }
+                for (int i = start; i < end; i++) {
+                    if (key.charAt(at + i - start) != normalize(cs.charAt(i))) {
+                        return -1;
+                    }
+                }
+                return at + end - start;
+            }
+
+            private static int matches(final String key, final int at, final char c) {
+                return at >= 0 && at < key.length() && key.charAt(at) == c ? at + 1 : -1;
+            }
+
+            /**
+             * @return the supported locales, in the order given
+             */
+            public List<Locale> getSupportedLocales() {
+                return supported;
+            }
+
+            /**
+             * <p>Picks the supported locale that best fits a weighted list of language tags such as
+             * {@code "de-CH, de;q=0.9, en;q=0.5"}.</p>
+             *
+             * @param preferences the comma separated language tags, each with an optional {@code q} weight between
+             *                    0 and 1; may be null
+             * @return the best supported locale, {@code null} if none is acceptable or null input
+             */
+            public Locale negotiate(final CharSequence preferences) {
+                if (preferences == null || supported.isEmpty()) {
+                    return null;
+                }
+                final int len = preferences.length();
+                Locale best = null;
+                int bestWeight = 0;
+                // nothing after a match of full weight can beat it
+                for (int start = 0; start < len && bestWeight < MAX_WEIGHT; ) {
+                    int end = start;
+                    while (end < len && preferences.charAt(end) != ',') {
+                        end++;
+                    }
+                    int tagEnd = start;
+                    while (tagEnd < end && preferences.charAt(tagEnd) != ';') {
+                        tagEnd++;
+                    }
+                    final int weight = weight(preferences, tagEnd, end);
+                    if (weight > bestWeight) {
+                        final Locale locale = lookup(preferences, skipSpace(preferences, start, tagEnd),
+                            trimSpace(preferences, start, tagEnd));
+                        if (locale != null) {
+                            best = locale;
+                            bestWeight = weight;
+                        }
+                    }
+                    start = end + 1;
+                }
+                return best;
+            }
+
+            private static boolean isSpace(final char c) {
+                return c == ' ' || c == '\t';
+            }
+
+            private static int skipSpace(final CharSequence cs, int start, final int end) {
+                while (start < end && isSpace(cs.charAt(start))) {
+                    start++;
+                }
+                return start;
+            }
+
+            private static int trimSpace(final CharSequence cs, final int start, int end) {
+                while (end > start && isSpace(cs.charAt(end - 1))) {
+                    end--;
+                }
+                return end;
+            }
+
+            /**
+             * @return the {@code q} weight of the parameters in {@code [start, end)} in thousandths, the full weight
+             * if there is none, -1 if it is malformed
+             */
+            private static int weight(final CharSequence cs, final int start, final int end) {
+                int at = start;
+                while (at < end) {
+                    // at is on a ';'
+                    final int name = skipSpace(cs, at + 1, end);
+                    int next = name;
+                    while (next < end && cs.charAt(next) != ';') {
+                        next++;
+                    }
+                    final int valueEnd = trimSpace(cs, name, next);
+                    if (valueEnd - name >= 2 && (cs.charAt(name) == 'q' || cs.charAt(name) == 'Q')) {
+                        final int value = skipSpace(cs, name + 1, valueEnd);
+                        if (value < valueEnd && cs.charAt(value) == '=') {
+                            return qvalue(cs, skipSpace(cs, value + 1, valueEnd), valueEnd);
+                        }
+                    }
+                    at = next;
+                }
+                return MAX_WEIGHT;
+            }
+
+            /**
+             * @return the weight {@code 0[.ddd]} or {@code 1[.000]} in thousandths, -1 if it is malformed
+             */
+            private static int qvalue(final CharSequence cs, final int start, final int end) {
+                if (start == end || cs.charAt(start) != '0' && cs.charAt(start) != '1') {
+                    return -1;
+                }
+                int weight = (cs.charAt(start) - '0') * MAX_WEIGHT;
+                if (start + 1 == end) {
+                    return weight;
+                }
+                if (cs.charAt(start + 1) != '.' || end - start > 5) {
+                    return -1;
+                }
+                int scale = MAX_WEIGHT;
+                for (int i = start + 2; i < end; i++) {
+                    final char c = cs.charAt(i);
+                    if (c < '0' || c > '9') {
+                        return -1;
+                    }
+                    scale /= 10;
+                    weight += (c - '0') * scale;
+                }
+                return weight > MAX_WEIGHT ? -1 : weight;
+            }
+
+            /**
+             * @return the supported locale for the tag in {@code [start, end)}, falling back to less specific tags,
+             * null if none
+             */
+            private Locale lookup(final CharSequence cs, final int start, final int end) {
+                if (end - start == 1 && cs.charAt(start) == '*') {
+                    return supported.get(0);
+                }
+                final int languageEnd = subtagEnd(cs, start, end);
+                if (languageEnd == start) {
+                    return null;
+                }
+                int at = next(languageEnd, end);
+                int subtagEnd = subtagEnd(cs, at, end);
+                if (subtagEnd - at == 4 && isLetters(cs, at, subtagEnd)) {
+                    // a script, which the index does not know
+                    at = next(subtagEnd, end);
+                    subtagEnd = subtagEnd(cs, at, end);
+                }
+                int countryEnd = at;
+                if (subtagEnd - at == 2 && isLetters(cs, at, subtagEnd)
+                    || subtagEnd - at == 3 && isDigits(cs, at, subtagEnd)) {
+                    countryEnd = subtagEnd;
+                }
+                final int countryStart = at;
+                // the variant runs up to the first singleton, which starts an extension or private use
+                final int variantStart = countryEnd == at ? at : next(countryEnd, end);
+                int variantEnd = variantStart;
+                for (int v = variantStart; v < end; ) {
+                    final int vEnd = subtagEnd(cs, v, end);
+                    if (vEnd - v <= 1) {
+                        break;
+                    }
+                    variantEnd = vEnd;
+                    v = next(vEnd, end);
+                }
+
+                // the index knows withdrawn language codes by their current ones
+                final String current = currentLanguage(cs, start, languageEnd);
+                final CharSequence language = current == null ? cs : current;
+                final int languageStart = current == null ? start : 0;
+                final int languageLimit = current == null ? languageEnd : current.length();
+                Locale locale = null;
+                if (variantStart < variantEnd) {
+                    locale = get(language, languageStart, languageLimit, cs, countryStart, countryEnd, variantStart,
+                        variantEnd);
+                }
+                if (locale == null && countryStart < countryEnd) {
+                    locale = get(language, languageStart, languageLimit, cs, countryStart, countryEnd, end, end);
+                }
+                if (locale == null) {
+                    locale = get(language, languageStart, languageLimit, cs, end, end, end, end);
+                }
+                return locale;
+            }
+
+            private static int subtagEnd(final CharSequence cs, int at, final int end) {
+                while (at < end && cs.charAt(at) != '-' && cs.charAt(at) != '_') {
+                    at++;
+                }
+                return at;
+            }
+
+            private static int next(final int subtagEnd, final int end) {
+                return Math.min(subtagEnd + 1, end);
+            }
+
+            private static boolean isLetters(final CharSequence cs, final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    final char c = normalize(cs.charAt(i));
+                    if (c < 'a' || c > 'z') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            private static boolean isDigits(final CharSequence cs, final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    if (cs.charAt(i) < '0' || cs.charAt(i) > '9') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
     }
 
     public static class ArrayTools {
@@ -378,7 +917,8 @@ public class ToolBox {
             } else if (cs instanceof StringBuffer) {
                 return ((StringBuffer) cs).indexOf(searchChar.toString(), start);
             }
-            return cs.toString().indexOf(searchChar.toString(), start);
+            // searched in place, e.g. a CharBuffer is not copied into a String
+            return SubstringMatcher.compile(searchChar).indexIn(cs, start);
         }
 
         /**
@@ -569,40 +1109,7 @@ public class ToolBox {
                 }
             }
 
-            if (start + len2 > len1) {
-                start = len1 - len2;
-            }
-
-            final char char0 = searchChar.charAt(0);
-
-            int i = start;
-            while (true) {
-                while (cs.charAt(i) != char0) {
-                    i--;
-                    if (i < 0) {
-                        return NOT_FOUND;
-                    }
-                }
-                if (checkLaterThan1(cs, searchChar, len2, i)) {
-                    return i;
-                }
-                i--;
-                if (i < 0) {
-                    return NOT_FOUND;
-                }
-            }
-        }
-
-        private static boolean checkLaterThan1(final CharSequence cs, final CharSequence searchChar, final int len2, final int start1) {
-            for (int i = 1, j = len2 - 1; i <= j; i++, j--) {
-                if (cs.charAt(start1 + i) != searchChar.charAt(i)
-                    ||
-                    cs.charAt(start1 + j) != searchChar.charAt(j)
-                ) {
-                    return false;
-                }
-            }
-            return true;
+            return SubstringMatcher.compile(searchChar).lastIndexIn(cs, start);
         }
     }
 
@@ -635,76 +1142,936 @@ public class ToolBox {
     }
 
     /**
-     * <p>Helpers to process Strings using regular expressions.</p>
+     * <p>An immutable, precompiled set of characters to search for, for the {@code StringTools} methods that look for
+     * any of a set of characters, e.g. {@link StringTools#indexOfAny(CharSequence, CharMatcher)}.</p>
      *
-     * @see Pattern
+     * <p>Characters of the Basic Multilingual Plane are kept in a bitset sized to the highest of them, so a set of
+     * ASCII characters costs two {@code long}s. Supplementary characters, given as surrogate pairs, are kept in a
+     * sorted table. Looking up a character costs O(1) in the BMP and O(log n) above it, so a scan costs O(text)
+     * however large the set is. A matcher is safe to share between threads and is meant to be built once and
+     * reused.</p>
+     *
+     * <pre>
+     * CharMatcher separators = CharMatcher.of(" ,;\t");
+     * StringTools.indexOfAny("key=a, b", separators) = 5
+     * </pre>
      */
-    public static class RegExTools {
+    public static final class CharMatcher {
+        private static final long[] NO_BITS = new long[0];
+        private static final int[] NO_CODE_POINTS = new int[0];
+
+        private final long[] bits;
+        private final int[] supplementary;
 
+        private CharMatcher(final long[] bits, final int[] supplementary) {
+            this.bits = bits;
+            this.supplementary = supplementary;
+        }
 
         /**
-         * <p>Replaces each substring of the text String that matches the given regular expression pattern with the given replacement.</p>
-         * <p>
-         * This method is a {@code null} safe equivalent to:
-         * <ul>
-         *  <li>{@code pattern.matcher(text).replaceAll(replacement)}</li>
-         * </ul>
-         *
-         * <p>A {@code null} reference passed to this method is a no-op.</p>
-         *
-         * <pre>
-         * StringTools.replaceAll(null, *, *)       = null
-         * StringTools.replaceAll("any", (Pattern) null, *)   = "any"
-         * StringTools.replaceAll("any", *, null)   = "any"
-         * StringTools.replaceAll("", Pattern.compile(""), "zzz")    = "zzz"
-         * StringTools.replaceAll("", Pattern.compile(".*"), "zzz")  = "zzz"
-         * StringTools.replaceAll("", Pattern.compile(".+"), "zzz")  = ""
-         * StringTools.replaceAll("abc", Pattern.compile(""), "ZZ")  = "ZZaZZbZZcZZ"
-         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("&lt;.*&gt;"), "z")                 = "z\nz"
-         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("&lt;.*&gt;", Pattern.DOTALL), "z") = "z"
-         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("(?s)&lt;.*&gt;"), "z")             = "z"
-         * StringTools.replaceAll("ABCabc123", Pattern.compile("[a-z]"), "_")       = "ABC___123"
-         * StringTools.replaceAll("ABCabc123", Pattern.compile("[^A-Z0-9]+"), "_")  = "ABC_123"
-         * StringTools.replaceAll("ABCabc123", Pattern.compile("[^A-Z0-9]+"), "")   = "ABC123"
-         * StringTools.replaceAll("Lorem ipsum  dolor   sit", Pattern.compile("( +)([a-z]+)"), "_$2")  = "Lorem_ipsum_dolor_sit"
-         * </pre>
+         * <p>Builds a matcher of the given characters. A high surrogate followed by a low surrogate stands for one
+         * supplementary character; any other surrogate stands for itself.</p>
          *
-         * @param text        text to search and replace in, may be null
-         * @param regex       the regular expression pattern to which this string is to be matched
-         * @param replacement the string to be substituted for each match
-         * @return the text with any replacements processed,
-         * {@code null} if null String input
-         * @see java.util.regex.Matcher#replaceAll(String)
-         * @see Pattern
+         * @param chars the characters to match, may be null
+         * @return the matcher, empty for {@code null} input
          */
-        public static String replaceAll(final String text, final Pattern regex, final String replacement) {
-            if (text == null || regex == null || replacement == null) {
-                return text;
-            }
-            return regex.matcher(text).replaceAll(replacement);
+        public static CharMatcher of(final char... chars) {
+            return of(chars == null ? null : new String(chars));
         }
 
         /**
-         * <p>Replaces each substring of the text String that matches the given regular expression
-         * with the given replacement.</p>
-         * <p>
-         * This method is a {@code null} safe equivalent to:
-         * <ul>
-         *  <li>{@code text.replaceAll(regex, replacement)}</li>
-         *  <li>{@code Pattern.compile(regex).matcher(text).replaceAll(replacement)}</li>
-         * </ul>
-         *
-         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         * <p>Builds a matcher of the characters in the given CharSequence. A high surrogate followed by a low
+         * surrogate stands for one supplementary character; any other surrogate stands for itself.</p>
          *
-         * <p>Unlike in the {@link #replacePattern(String, String, String)} method, the {@link Pattern#DOTALL} option
-         * is NOT automatically added.
-         * To use the DOTALL option prepend {@code "(?s)"} to the regex.
-         * DOTALL is also known as single-line mode in Perl.</p>
+         * @param chars the characters to match, may be null
+         * @return the matcher, empty for {@code null} input
+         */
+        public static CharMatcher of(final CharSequence chars) {
+            return build(chars, true);
+        }
+
+        /**
+         * Builds a matcher that takes every char on its own, surrogates included, for the methods that compare
+         * single chars rather than characters.
          *
-         * <pre>
-         * StringTools.replaceAll(null, *, *)       = null
-         * StringTools.replaceAll("any", (String) null, *)   = "any"
-         * StringTools.replaceAll("any", *, null)   = "any"
+         * @param chars the chars to match, may be null
+         * @return the matcher, empty for {@code null} input
+         */
+        static CharMatcher ofUnits(final CharSequence chars) {
+            return build(chars, false);
+        }
+
+        private static CharMatcher build(final CharSequence chars, final boolean pairs) {
+            final int len = StringTools.length(chars);
+            if (len == 0) {
+                return new CharMatcher(NO_BITS, NO_CODE_POINTS);
+            }
+            // first pass sizes the tables, second fills them
+            int maxChar = -1;
+            int supplementaryCount = 0;
+            for (int i = 0; i < len; i++) {
+                final int codePoint = codePointAt(chars, i, len, pairs);
+                if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    supplementaryCount++;
+                    i++;
+                } else {
+                    maxChar = Math.max(maxChar, codePoint);
+                }
+            }
+            final long[] bits = maxChar < 0 ? NO_BITS : new long[(maxChar >>> 6) + 1];
+            int[] codePoints = supplementaryCount == 0 ? NO_CODE_POINTS : new int[supplementaryCount];
+            int next = 0;
+            for (int i = 0; i < len; i++) {
+                final int codePoint = codePointAt(chars, i, len, pairs);
+                if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    codePoints[next++] = codePoint;
+                    i++;
+                } else {
+                    bits[codePoint >>> 6] |= 1L << codePoint;
+                }
+            }
+            if (codePoints.length > 1) {
+                Arrays.sort(codePoints);
+                int unique = 1;
+                for (int i = 1; i < codePoints.length; i++) {
+                    if (codePoints[i] != codePoints[unique - 1]) {
+                        codePoints[unique++] = codePoints[i];
+                    }
+                }
+                codePoints = Arrays.copyOf(codePoints, unique);
+            }
+            return new CharMatcher(bits, codePoints);
+        }
+
+        private static int codePointAt(final CharSequence cs, final int index, final int len, final boolean pairs) {
+            final char ch = cs.charAt(index);
+            if (pairs && Character.isHighSurrogate(ch) && index + 1 < len) {
+                final char low = cs.charAt(index + 1);
+                if (Character.isLowSurrogate(low)) {
+                    return Character.toCodePoint(ch, low);
+                }
+            }
+            return ch;
+        }
+
+        /**
+         * @return {@code true} if the matcher matches no character at all
+         */
+        public boolean isEmpty() {
+            if (supplementary.length > 0) {
+                return false;
+            }
+            for (final long word : bits) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * <p>Checks whether a character is in the set.</p>
+         *
+         * @param codePoint the character, a char value or a supplementary code point
+         * @return {@code true} if the character is in the set
+         */
+        public boolean matches(final int codePoint) {
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                final int word = codePoint >>> 6;
+                return codePoint >= 0 && word < bits.length && (bits[word] & 1L << codePoint) != 0;
+            }
+            return supplementary.length > 0 && Arrays.binarySearch(supplementary, codePoint) >= 0;
+        }
+
+        /**
+         * Finds the first character of a CharSequence that is, or is not, in the set. A surrogate pair is looked up
+         * as one supplementary character, a lone surrogate as itself.
+         *
+         * @param cs    the CharSequence to search, not null
+         * @param match {@code true} to find a character in the set, {@code false} to find one outside of it
+         * @return the index of the character, -1 if there is none
+         */
+        int indexIn(final CharSequence cs, final boolean match) {
+            final int len = cs.length();
+            for (int i = 0; i < len; i++) {
+                final char ch = cs.charAt(i);
+                if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                    if (matches(Character.toCodePoint(ch, cs.charAt(i + 1))) == match) {
+                        return i;
+                    }
+                    i++;
+                } else if (matches(ch) == match) {
+                    return i;
+                }
+            }
+            return StringTools.INDEX_NOT_FOUND;
+        }
+    }
+
+    /**
+     * <p>A precompiled substring to search for in any {@link CharSequence}, e.g. a {@code CharBuffer} or a rope,
+     * without copying the text into a String first.</p>
+     *
+     * <p>Patterns shorter than {@value #TWO_WAY_MIN_LENGTH} chars are searched with Boyer-Moore-Horspool, which
+     * skips ahead by up to the pattern length after a mismatch, using a shift table indexed by the low byte of each
+     * char. Longer patterns are searched with the Two-Way algorithm, which needs no table and never looks at a char
+     * of the text more than a constant number of times, where Horspool degrades to O(text &times; pattern) on
+     * repetitive input. Backward searches run the same algorithms on the reversed pattern over a reversed view of the
+     * text.</p>
+     *
+     * <p>A matcher is immutable and safe to share between threads; compiling costs O(pattern) and is meant to be
+     * done once for repeated searches. The engine for backward searches is only built by the first one.</p>
+     *
+     * <pre>
+     * SubstringMatcher error = SubstringMatcher.compile("ERROR");
+     * error.indexIn(CharBuffer.wrap("12:00 ERROR disk full"), 0) = 6
+     * </pre>
+     */
+    public static final class SubstringMatcher {
+        private static final int NOT_FOUND = -1;
+        /**
+         * Pattern length from which Two-Way is used instead of Horspool.
+         */
+        static final int TWO_WAY_MIN_LENGTH = 64;
+
+        private final int length;
+        private final char[] pattern;
+        private final Engine forward;
+        // built on the first backward search, which one-shot forward searches never make
+        private Engine backward;
+
+        private SubstringMatcher(final char[] pattern) {
+            this.length = pattern.length;
+            this.pattern = pattern;
+            this.forward = engine(pattern);
+        }
+
+        private static Engine engine(final char[] pattern) {
+            return pattern.length < TWO_WAY_MIN_LENGTH ? new Horspool(pattern) : new TwoWay(pattern);
+        }
+
+        /**
+         * <p>Compiles a substring to search for.</p>
+         *
+         * @param pattern the substring, not null
+         * @return the matcher
+         */
+        public static SubstringMatcher compile(final CharSequence pattern) {
+            return new SubstringMatcher(CharSequenceTools.toCharArray(pattern));
+        }
+
+        /**
+         * @return the length of the pattern
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * <p>Finds the first occurrence of the pattern, with the semantics of {@link String#indexOf(String, int)}.</p>
+         *
+         * @param text  the CharSequence to search, may be null
+         * @param start the index to start at, negative starts at the beginning
+         * @return the index of the first occurrence at or after {@code start}, -1 if there is none or null input
+         */
+        public int indexIn(final CharSequence text, final int start) {
+            if (text == null) {
+                return NOT_FOUND;
+            }
+            final int textLength = text.length();
+            final int from = Math.max(start, 0);
+            if (from >= textLength) {
+                return length == 0 ? textLength : NOT_FOUND;
+            }
+            if (length == 0) {
+                return from;
+            }
+            return forward.find(text, textLength, from);
+        }
+
+        /**
+         * <p>Finds the last occurrence of the pattern, with the semantics of
+         * {@link String#lastIndexOf(String, int)}.</p>
+         *
+         * @param text  the CharSequence to search, may be null
+         * @param start the index to search backward from, beyond the end starts at the end
+         * @return the index of the last occurrence at or before {@code start}, -1 if there is none or null input
+         */
+        public int lastIndexIn(final CharSequence text, final int start) {
+            if (text == null) {
+                return NOT_FOUND;
+            }
+            final int textLength = text.length();
+            final int from = Math.min(start, textLength - length);
+            if (from < 0) {
+                return NOT_FOUND;
+            }
+            if (length == 0) {
+                return from;
+            }
+            // an occurrence at i is one of the reversed pattern at textLength - i - length in the reversed text
+            final int found = backward().find(new Reversed(text), textLength, textLength - from - length);
+            return found < 0 ? NOT_FOUND : textLength - found - length;
+        }
+
+        private Engine backward() {
+            // engines are immutable, so a race at worst builds one twice
+            Engine engine = backward;
+            if (engine == null) {
+                final char[] reversed = new char[length];
+                for (int i = 0; i < length; i++) {
+                    reversed[i] = pattern[length - 1 - i];
+                }
+                engine = engine(reversed);
+                backward = engine;
+            }
+            return engine;
+        }
+
+        /**
+         * A search algorithm bound to one pattern.
+         */
+        private abstract static class Engine {
+            final char[] pattern;
+
+            Engine(final char[] pattern) {
+                this.pattern = pattern;
+            }
+
+            /**
+             * @return the first index at or after {@code from} where the pattern starts, -1 if none; the pattern is
+             * not empty and {@code from} lies within the text
+             */
+            abstract int find(CharSequence text, int textLength, int from);
+        }
+
+        private static final class Horspool extends Engine {
+            private final int[] shifts = new int[256];
+
+            Horspool(final char[] pattern) {
+                super(pattern);
+                final int last = pattern.length - 1;
+                Arrays.fill(shifts, pattern.length);
+                // chars sharing a low byte share a slot, which can only make shifts shorter, never wrong
+                for (int i = 0; i < last; i++) {
+                    shifts[pattern[i] & 0xFF] = last - i;
+                }
+            }
+
+            @Override
+            int find(final CharSequence text, final int textLength, final int from) {
+                final int last = pattern.length - 1;
+                final char lastChar = pattern[last];
+                for (int i = from; i <= textLength - pattern.length; ) {
+                    final char c = text.charAt(i + last);
+                    if (c == lastChar && matchesAt(text, i, last)) {
+                        return i;
+                    }
+                    i += shifts[c & 0xFF];
+                }
+                return NOT_FOUND;
+            }
+
+            private boolean matchesAt(final CharSequence text, final int offset, final int count) {
+                for (int j = 0; j < count; j++) {
+                    if (text.charAt(offset + j) != pattern[j]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Crochemore and Perrin's Two-Way algorithm: the pattern is split at a critical factorization, the right
+         * part is matched left to right and the left part right to left, and a periodic pattern remembers how much
+         * of itself already matched.
+         */
+        private static final class TwoWay extends Engine {
+            // last index of the left part of the critical factorization
+            private final int split;
+            private final int period;
+            private final boolean periodic;
+
+            TwoWay(final char[] pattern) {
+                super(pattern);
+                final long lessSuffix = maximalSuffix(pattern, false);
+                final long greaterSuffix = maximalSuffix(pattern, true);
+                // the later of the two maximal suffixes gives a critical factorization
+                final long chosen = lessSuffix >> 32 >= greaterSuffix >> 32 ? lessSuffix : greaterSuffix;
+                split = (int) (chosen >> 32);
+                final int suffixPeriod = (int) chosen;
+                boolean repeats = split + 1 + suffixPeriod <= pattern.length;
+                for (int i = 0; repeats && i <= split; i++) {
+                    repeats = pattern[i] == pattern[i + suffixPeriod];
+                }
+                periodic = repeats;
+                period = periodic ? suffixPeriod : Math.max(split + 1, pattern.length - split - 1) + 1;
+            }
+
+            /**
+             * @return the start of the maximal suffix minus one in the high half, its period in the low half
+             */
+            private static long maximalSuffix(final char[] pattern, final boolean reversedOrder) {
+                int suffix = -1;
+                int j = 0;
+                int k = 1;
+                int p = 1;
+                while (j + k < pattern.length) {
+                    final char a = pattern[j + k];
+                    final char b = pattern[suffix + k];
+                    if (reversedOrder ? a > b : a < b) {
+                        j += k;
+                        k = 1;
+                        p = j - suffix;
+                    } else if (a == b) {
+                        if (k != p) {
+                            k++;
+                        } else {
+                            j += p;
+                            k = 1;
+                        }
+                    } else {
+                        suffix = j;
+                        j = suffix + 1;
+                        k = 1;
+                        p = 1;
+                    }
+                }
+                return (long) suffix << 32 | p & 0xFFFFFFFFL;
+            }
+
+            @Override
+            int find(final CharSequence text, final int textLength, final int from) {
+                final int m = pattern.length;
+                int memory = -1;
+                for (int j = from; j <= textLength - m; ) {
+                    int i = Math.max(split, memory) + 1;
+                    while (i < m && pattern[i] == text.charAt(i + j)) {
+                        i++;
+                    }
+                    if (i < m) {
+                        j += i - split;
+                        memory = -1;
+                        continue;
+                    }
+                    i = split;
+                    while (i > memory && pattern[i] == text.charAt(i + j)) {
+                        i--;
+                    }
+                    if (i <= memory) {
+                        return j;
+                    }
+                    j += period;
+                    memory = periodic ? m - period - 1 : -1;
+                }
+                return NOT_FOUND;
+            }
+        }
+
+        /**
+         * A reversed view of a CharSequence, for searching backward with the forward algorithms.
+         */
+        private static final class Reversed implements CharSequence {
+            private final CharSequence cs;
+            private final int last;
+
+            Reversed(final CharSequence cs) {
+                this.cs = cs;
+                this.last = cs.length() - 1;
+            }
+
+            @Override
+            public int length() {
+                return last + 1;
+            }
+
+            @Override
+            public char charAt(final int index) {
+                return cs.charAt(last - index);
+            }
+
+            @Override
+            public CharSequence subSequence(final int start, final int end) {
+                return new StringBuilder(this).subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return new StringBuilder(this).toString();
+            }
+        }
+    }
+
+    /**
+     * <p>A set of literal keywords, precompiled into an Aho-Corasick automaton, to look for in a text all at once.</p>
+     *
+     * <p>The keywords form a trie whose nodes also link to the longest proper suffix that is in the trie as well.
+     * A search walks the text once, char by char, following trie edges and falling back along the suffix links on a
+     * mismatch, so it costs O(text + matches) however many keywords there are, instead of one scan per keyword.
+     * Case-insensitive matchers compare char by char as {@link String#regionMatches(boolean, int, String, int, int)}
+     * does.</p>
+     *
+     * <p>A matcher is immutable and safe to share between threads. {@code null} and empty keywords are ignored, and
+     * a keyword given twice is reported under its first index.</p>
+     *
+     * <pre>
+     * KeywordMatcher levels = KeywordMatcher.compile(true, "error", "warn", "fatal");
+     * levels.containsAny("disk FULL: Fatal")   = true
+     * levels.first("a warning, then an error") = [2, 6) "warn"
+     * </pre>
+     */
+    public static final class KeywordMatcher {
+        private static final int NO_NODE = -1;
+        private static final char[] NO_CHARS = new char[0];
+        private static final int[] NO_NODES = new int[0];
+
+        private final String[] keywords;
+        private final boolean ignoreCase;
+        private final int maxLength;
+        // per node: sorted edge chars and their target nodes, the node of the longest proper suffix in the trie,
+        // the keyword ending at the node or -1, and the next node on the suffix chain where a keyword ends or -1
+        private final char[][] edgeChars;
+        private final int[][] edgeTargets;
+        private final int[] fail;
+        private final int[] output;
+        private final int[] outputLink;
+
+        private KeywordMatcher(final List<? extends CharSequence> keywords, final boolean ignoreCase) {
+            this.keywords = new String[keywords.size()];
+            this.ignoreCase = ignoreCase;
+            int nodeCount = 1;
+            int longest = 0;
+            for (int k = 0; k < keywords.size(); k++) {
+                final CharSequence keyword = keywords.get(k);
+                this.keywords[k] = keyword == null ? null : keyword.toString();
+                nodeCount += StringTools.length(keyword);
+                longest = Math.max(longest, StringTools.length(keyword));
+            }
+            this.maxLength = longest;
+
+            // the trie, with at most one node per keyword char
+            char[][] chars = new char[nodeCount][];
+            int[][] targets = new int[nodeCount][];
+            final int[] outputs = new int[nodeCount];
+            Arrays.fill(outputs, NO_NODE);
+            chars[0] = NO_CHARS;
+            targets[0] = NO_NODES;
+            int size = 1;
+            for (int k = 0; k < keywords.size(); k++) {
+                final CharSequence keyword = keywords.get(k);
+                final int len = StringTools.length(keyword);
+                if (len == 0) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < len; i++) {
+                    final char c = normalize(keyword.charAt(i));
+                    final int edge = Arrays.binarySearch(chars[node], c);
+                    if (edge >= 0) {
+                        node = targets[node][edge];
+                        continue;
+                    }
+                    final int at = -edge - 1;
+                    chars[node] = insert(chars[node], at, c);
+                    targets[node] = insert(targets[node], at, size);
+                    chars[size] = NO_CHARS;
+                    targets[size] = NO_NODES;
+                    node = size++;
+                }
+                if (outputs[node] == NO_NODE) {
+                    outputs[node] = k;
+                }
+            }
+            this.edgeChars = Arrays.copyOf(chars, size);
+            this.edgeTargets = Arrays.copyOf(targets, size);
+            this.output = Arrays.copyOf(outputs, size);
+
+            // suffix links breadth first, so the links of shallower nodes are ready when needed
+            this.fail = new int[size];
+            this.outputLink = new int[size];
+            outputLink[0] = NO_NODE;
+            final int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            for (final int child : edgeTargets[0]) {
+                outputLink[child] = NO_NODE;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                final int node = queue[head++];
+                for (int e = 0; e < edgeChars[node].length; e++) {
+                    final char c = edgeChars[node][e];
+                    final int child = edgeTargets[node][e];
+                    int suffix = fail[node];
+                    while (suffix != 0 && next(suffix, c) == NO_NODE) {
+                        suffix = fail[suffix];
+                    }
+                    final int target = next(suffix, c);
+                    fail[child] = target == NO_NODE ? 0 : target;
+                    outputLink[child] = output[fail[child]] != NO_NODE ? fail[child] : outputLink[fail[child]];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        private static char[] insert(final char[] array, final int index, final char value) {
+            final char[] copy = new char[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            return copy;
+        }
+
+        private static int[] insert(final int[] array, final int index, final int value) {
+            final int[] copy = new int[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            return copy;
+        }
+
+        /**
+         * <p>Compiles a keyword set.</p>
+         *
+         * @param ignoreCase whether to match regardless of case
+         * @param keywords   the keywords, may be null
+         * @return the matcher, matching nothing for {@code null} input
+         */
+        public static KeywordMatcher compile(final boolean ignoreCase, final CharSequence... keywords) {
+            return compile(keywords == null ? null : Arrays.asList(keywords), ignoreCase);
+        }
+
+        /**
+         * <p>Compiles a keyword set.</p>
+         *
+         * @param keywords   the keywords, may be null
+         * @param ignoreCase whether to match regardless of case
+         * @return the matcher, matching nothing for {@code null} input
+         */
+        public static KeywordMatcher compile(final List<? extends CharSequence> keywords, final boolean ignoreCase) {
+            return new KeywordMatcher(keywords == null ? Collections.<CharSequence>emptyList() : keywords,
+                ignoreCase);
+        }
+
+        private char normalize(final char c) {
+            return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+        }
+
+        private int next(final int node, final char c) {
+            final int edge = Arrays.binarySearch(edgeChars[node], c);
+            return edge < 0 ? NO_NODE : edgeTargets[node][edge];
+        }
+
+        /**
+         * @return the node after reading {@code c} in {@code node}
+         */
+        private int step(int node, final char c) {
+            int target = next(node, c);
+            while (target == NO_NODE && node != 0) {
+                node = fail[node];
+                target = next(node, c);
+            }
+            return target == NO_NODE ? 0 : target;
+        }
+
+        /**
+         * @return the first node on the suffix chain of {@code node}, itself included, where a keyword ends
+         */
+        private int firstOutput(final int node) {
+            return output[node] != NO_NODE ? node : outputLink[node];
+        }
+
+        /**
+         * @return the keywords, in the order given
+         */
+        public List<String> getKeywords() {
+            return Collections.unmodifiableList(Arrays.asList(keywords));
+        }
+
+        /**
+         * @return whether matching ignores case
+         */
+        public boolean isIgnoreCase() {
+            return ignoreCase;
+        }
+
+        /**
+         * <p>Checks whether any keyword occurs in the text. Stops at the first keyword found.</p>
+         *
+         * @param text the CharSequence to search, may be null
+         * @return {@code true} if a keyword occurs, {@code false} if none does or null input
+         */
+        public boolean containsAny(final CharSequence text) {
+            final int len = StringTools.length(text);
+            int node = 0;
+            for (int i = 0; i < len; i++) {
+                node = step(node, normalize(text.charAt(i)));
+                if (firstOutput(node) != NO_NODE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * <p>Finds the keyword occurrence that starts first; of several starting at the same index, the longest.</p>
+         *
+         * @param text the CharSequence to search, may be null
+         * @return the occurrence, {@code null} if there is none or null input
+         */
+        public Match first(final CharSequence text) {
+            final int len = StringTools.length(text);
+            int bestStart = len;
+            int bestKeyword = NO_NODE;
+            int node = 0;
+            // an occurrence ending at i starts at i - maxLength + 1 at the earliest
+            for (int i = 0; i < len && i + 1 - maxLength <= bestStart; i++) {
+                node = step(node, normalize(text.charAt(i)));
+                for (int out = firstOutput(node); out != NO_NODE; out = outputLink[out]) {
+                    final int keyword = output[out];
+                    final int start = i + 1 - keywords[keyword].length();
+                    if (start < bestStart
+                        || start == bestStart && keywords[keyword].length() > keywords[bestKeyword].length()) {
+                        bestStart = start;
+                        bestKeyword = keyword;
+                    }
+                }
+            }
+            return bestKeyword == NO_NODE ? null : new Match(bestStart, bestKeyword);
+        }
+
+        /**
+         * <p>Finds the index of the first keyword occurrence, as {@link #first(CharSequence)}.</p>
+         *
+         * @param text the CharSequence to search, may be null
+         * @return the start index, -1 if there is no occurrence or null input
+         */
+        public int indexIn(final CharSequence text) {
+            final Match match = first(text);
+            return match == null ? StringTools.INDEX_NOT_FOUND : match.getStart();
+        }
+
+        /**
+         * <p>Finds every keyword occurrence, overlapping ones included, ordered by end index and, for the same end,
+         * longest first.</p>
+         *
+         * @param text the CharSequence to search, may be null
+         * @return the occurrences, empty if there are none or null input
+         */
+        public List<Match> findAll(final CharSequence text) {
+            final List<Match> matches = new ArrayList<>();
+            final int len = StringTools.length(text);
+            int node = 0;
+            for (int i = 0; i < len; i++) {
+                node = step(node, normalize(text.charAt(i)));
+                for (int out = firstOutput(node); out != NO_NODE; out = outputLink[out]) {
+                    final int keyword = output[out];
+                    matches.add(new Match(i + 1 - keywords[keyword].length(), keyword));
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * An occurrence of a keyword in a text.
+         */
+        public final class Match {
+            private final int start;
+            private final int keyword;
+
+            private Match(final int start, final int keyword) {
+                this.start = start;
+                this.keyword = keyword;
+            }
+
+            /**
+             * @return the index of the first char of the occurrence
+             */
+            public int getStart() {
+                return start;
+            }
+
+            /**
+             * @return the index after the last char of the occurrence
+             */
+            public int getEnd() {
+                return start + keywords[keyword].length();
+            }
+
+            /**
+             * @return the index of the keyword in the list the matcher was compiled from
+             */
+            public int getKeywordIndex() {
+                return keyword;
+            }
+
+            /**
+             * @return the keyword as given, which may differ in case from the text if case is ignored
+             */
+            public String getKeyword() {
+                return keywords[keyword];
+            }
+
+            @Override
+            public String toString() {
+                return "[" + start + ", " + getEnd() + ") \"" + getKeyword() + "\"";
+            }
+        }
+    }
+
+    /**
+     * <p>Helpers to process Strings using regular expressions.</p>
+     *
+     * <p>The methods taking the regular expression as a String compile it through a shared {@link PatternCache},
+     * so a regex that is used again is not compiled again.</p>
+     *
+     * <p>When such a regex has no metacharacters and the replacement no group references or escapes, which is
+     * common for separators like {@code ","} or {@code "\t"}, the methods skip the regex engine altogether: the
+     * occurrences are found with {@link String#indexOf(String, int)} and the result is built in one exactly sized
+     * array.</p>
+     *
+     * <p>Replacements can also stream from a {@link Reader} or {@link ReadableByteChannel} to a {@link Writer} or
+     * {@link WritableByteChannel}, for texts too large to hold in memory.</p>
+     *
+     * <p>Several replacements to make in the same text can be compiled into {@link ReplacementRules}, which apply
+     * them all in one pass.</p>
+     *
+     * @see Pattern
+     */
+    public static class RegExTools {
+        /**
+         * Number of compiled patterns the shared cache keeps.
+         */
+        static final int PATTERN_CACHE_SIZE = 128;
+        private static final PatternCache PATTERNS = new PatternCache(PATTERN_CACHE_SIZE);
+        /**
+         * Number of chars the streaming methods read at a time.
+         */
+        static final int STREAM_CHUNK = 8192;
+        /**
+         * Number of chars at the end of a chunk that the streaming methods hold back while a match may start there.
+         */
+        static final int STREAM_WINDOW = 4096;
+        /**
+         * Number of chars before a chunk that the streaming methods keep for lookbehind.
+         */
+        static final int STREAM_CONTEXT = 256;
+        /**
+         * Length from which the parallel methods split a text into chunks.
+         */
+        static final int PARALLEL_MIN_LENGTH = 1 << 20;
+        /**
+         * Least number of chars the parallel methods give a chunk.
+         */
+        static final int PARALLEL_CHUNK = 1 << 18;
+        private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+        /**
+         * @return the cache shared by the methods taking the regular expression as a String, e.g. to read its
+         * counters
+         */
+        public static PatternCache getPatternCache() {
+            return PATTERNS;
+        }
+
+        /**
+         * <p>Replaces each substring of the text String that matches the given regular expression pattern with the given replacement.</p>
+         * <p>
+         * This method is a {@code null} safe equivalent to:
+         * <ul>
+         *  <li>{@code pattern.matcher(text).replaceAll(replacement)}</li>
+         * </ul>
+         *
+         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         *
+         * <pre>
+         * StringTools.replaceAll(null, *, *)       = null
+         * StringTools.replaceAll("any", (Pattern) null, *)   = "any"
+         * StringTools.replaceAll("any", *, null)   = "any"
+         * StringTools.replaceAll("", Pattern.compile(""), "zzz")    = "zzz"
+         * StringTools.replaceAll("", Pattern.compile(".*"), "zzz")  = "zzz"
+         * StringTools.replaceAll("", Pattern.compile(".+"), "zzz")  = ""
+         * StringTools.replaceAll("abc", Pattern.compile(""), "ZZ")  = "ZZaZZbZZcZZ"
+         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("&lt;.*&gt;"), "z")                 = "z\nz"
+         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("&lt;.*&gt;", Pattern.DOTALL), "z") = "z"
+         * StringTools.replaceAll("&lt;__&gt;\n&lt;__&gt;", Pattern.compile("(?s)&lt;.*&gt;"), "z")             = "z"
+         * StringTools.replaceAll("ABCabc123", Pattern.compile("[a-z]"), "_")       = "ABC___123"
+         * StringTools.replaceAll("ABCabc123", Pattern.compile("[^A-Z0-9]+"), "_")  = "ABC_123"
+         * StringTools.replaceAll("ABCabc123", Pattern.compile("[^A-Z0-9]+"), "")   = "ABC123"
+         * StringTools.replaceAll("Lorem ipsum  dolor   sit", Pattern.compile("( +)([a-z]+)"), "_$2")  = "Lorem_ipsum_dolor_sit"
+         * </pre>
+         *
+         * @param text        text to search and replace in, may be null
+         * @param regex       the regular expression pattern to which this string is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the text with any replacements processed,
+         * {@code null} if null String input
+         * @see java.util.regex.Matcher#replaceAll(String)
+         * @see Pattern
+         */
+        public static String replaceAll(final String text, final Pattern regex, final String replacement) {
+            if (text == null || regex == null || replacement == null) {
+                return text;
+            }
+            return regex.matcher(text).replaceAll(replacement);
+        }
+
+        /**
+         * <p>Replaces each match of the regular expression as {@link #replaceAll(String, Pattern, String)} does,
+         * splitting a large text into chunks that are replaced in parallel on the common
+         * {@link java.util.concurrent.ForkJoinPool}.</p>
+         *
+         * <p>The result is always that of the sequential call. It pays off for texts of many megabytes and patterns
+         * whose matches stay within a line; see {@link ReplacementRules#replaceAllParallel(CharSequence)} for how
+         * the text is split and which cases fall back to the sequential call, as do patterns using
+         * {@link Pattern#CANON_EQ}.</p>
+         *
+         * <p>The replacement is checked up front, whatever the length of the text, so a malformed one fails the
+         * same way on either path, even if nothing matches.</p>
+         *
+         * @param text        text to search and replace in, may be null
+         * @param regex       the regular expression pattern to which this string is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the text with any replacements processed, {@code null} if null String input
+         * @throws IllegalArgumentException  if the replacement is malformed or refers to a group name the pattern
+         *                                   does not have
+         * @throws IndexOutOfBoundsException if the replacement refers to a group number the pattern does not have
+         */
+        public static String replaceAllParallel(final String text, final Pattern regex, final String replacement) {
+            if (text == null || regex == null || replacement == null) {
+                return text;
+            }
+            if (text.length() < PARALLEL_MIN_LENGTH || (regex.flags() & Pattern.CANON_EQ) != 0) {
+                // as the rules would when built for the parallel path
+                ReplacementRules.parseReplacement(regex.pattern(), regex.matcher(EMPTY).groupCount(), replacement,
+                    false, 0, new ArrayList<>(), new ArrayList<>());
+                return regex.matcher(text).replaceAll(replacement);
+            }
+            return ReplacementRules.builder().add(regex, replacement).build().replaceAllParallel(text);
+        }
+
+        /**
+         * <p>Replaces each substring of the text String that matches the given regular expression
+         * with the given replacement.</p>
+         * <p>
+         * This method is a {@code null} safe equivalent to:
+         * <ul>
+         *  <li>{@code text.replaceAll(regex, replacement)}</li>
+         *  <li>{@code Pattern.compile(regex).matcher(text).replaceAll(replacement)}</li>
+         * </ul>
+         *
+         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         *
+         * <p>Unlike in the {@link #replacePattern(String, String, String)} method, the {@link Pattern#DOTALL} option
+         * is NOT automatically added.
+         * To use the DOTALL option prepend {@code "(?s)"} to the regex.
+         * DOTALL is also known as single-line mode in Perl.</p>
+         *
+         * <pre>
+         * StringTools.replaceAll(null, *, *)       = null
+         * StringTools.replaceAll("any", (String) null, *)   = "any"
+         * StringTools.replaceAll("any", *, null)   = "any"
          * StringTools.replaceAll("", "", "zzz")    = "zzz"
          * StringTools.replaceAll("", ".*", "zzz")  = "zzz"
          * StringTools.replaceAll("", ".+", "zzz")  = ""
@@ -732,7 +2099,10 @@ public class ToolBox {
             if (text == null || regex == null || replacement == null) {
                 return text;
             }
-            return text.replaceAll(regex, replacement);
+            if (isLiteral(regex, replacement)) {
+                return replaceLiteral(text, regex, replacement, true);
+            }
+            return PATTERNS.get(regex, 0).matcher(text).replaceAll(replacement);
         }
 
         /**
@@ -774,97 +2144,1182 @@ public class ToolBox {
             if (text == null || regex == null || replacement == null) {
                 return text;
             }
-            return regex.matcher(text).replaceFirst(replacement);
+            return regex.matcher(text).replaceFirst(replacement);
+        }
+
+        /**
+         * <p>Replaces the first substring of the text string that matches the given regular expression
+         * with the given replacement.</p>
+         * <p>
+         * This method is a {@code null} safe equivalent to:
+         * <ul>
+         *  <li>{@code text.replaceFirst(regex, replacement)}</li>
+         *  <li>{@code Pattern.compile(regex).matcher(text).replaceFirst(replacement)}</li>
+         * </ul>
+         *
+         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         *
+         * <p>The {@link Pattern#DOTALL} option is NOT automatically added.
+         * To use the DOTALL option prepend {@code "(?s)"} to the regex.
+         * DOTALL is also known as single-line mode in Perl.</p>
+         *
+         * <pre>
+         * StringTools.replaceFirst(null, *, *)       = null
+         * StringTools.replaceFirst("any", (String) null, *)   = "any"
+         * StringTools.replaceFirst("any", *, null)   = "any"
+         * StringTools.replaceFirst("", "", "zzz")    = "zzz"
+         * StringTools.replaceFirst("", ".*", "zzz")  = "zzz"
+         * StringTools.replaceFirst("", ".+", "zzz")  = ""
+         * StringTools.replaceFirst("abc", "", "ZZ")  = "ZZabc"
+         * StringTools.replaceFirst("&lt;__&gt;\n&lt;__&gt;", "&lt;.*&gt;", "z")      = "z\n&lt;__&gt;"
+         * StringTools.replaceFirst("&lt;__&gt;\n&lt;__&gt;", "(?s)&lt;.*&gt;", "z")  = "z"
+         * StringTools.replaceFirst("ABCabc123", "[a-z]", "_")          = "ABC_bc123"
+         * StringTools.replaceFirst("ABCabc123abc", "[^A-Z0-9]+", "_")  = "ABC_123abc"
+         * StringTools.replaceFirst("ABCabc123abc", "[^A-Z0-9]+", "")   = "ABC123abc"
+         * StringTools.replaceFirst("Lorem ipsum  dolor   sit", "( +)([a-z]+)", "_$2")  = "Lorem_ipsum  dolor   sit"
+         * </pre>
+         *
+         * @param text        text to search and replace in, may be null
+         * @param regex       the regular expression to which this string is to be matched
+         * @param replacement the string to be substituted for the first match
+         * @return the text with the first replacement processed,
+         * {@code null} if null String input
+         * @throws java.util.regex.PatternSyntaxException if the regular expression's syntax is invalid
+         * @see String#replaceFirst(String, String)
+         * @see Pattern
+         * @see Pattern#DOTALL
+         */
+        public static String replaceFirst(final String text, final String regex, final String replacement) {
+            if (text == null || regex == null || replacement == null) {
+                return text;
+            }
+            if (isLiteral(regex, replacement)) {
+                return replaceLiteral(text, regex, replacement, false);
+            }
+            return PATTERNS.get(regex, 0).matcher(text).replaceFirst(replacement);
+        }
+
+        /**
+         * <p>Replaces each substring of the source String that matches the given regular expression with the given
+         * replacement using the {@link Pattern#DOTALL} option. DOTALL is also known as single-line mode in Perl.</p>
+         * <p>
+         * This call is a {@code null} safe equivalent to:
+         * <ul>
+         * <li>{@code text.replaceAll(&quot;(?s)&quot; + regex, replacement)}</li>
+         * <li>{@code Pattern.compile(regex, Pattern.DOTALL).matcher(text).replaceAll(replacement)}</li>
+         * </ul>
+         *
+         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         *
+         * <pre>
+         * StringTools.replacePattern(null, *, *)       = null
+         * StringTools.replacePattern("any", (String) null, *)   = "any"
+         * StringTools.replacePattern("any", *, null)   = "any"
+         * StringTools.replacePattern("", "", "zzz")    = "zzz"
+         * StringTools.replacePattern("", ".*", "zzz")  = "zzz"
+         * StringTools.replacePattern("", ".+", "zzz")  = ""
+         * StringTools.replacePattern("&lt;__&gt;\n&lt;__&gt;", "&lt;.*&gt;", "z")       = "z"
+         * StringTools.replacePattern("ABCabc123", "[a-z]", "_")       = "ABC___123"
+         * StringTools.replacePattern("ABCabc123", "[^A-Z0-9]+", "_")  = "ABC_123"
+         * StringTools.replacePattern("ABCabc123", "[^A-Z0-9]+", "")   = "ABC123"
+         * StringTools.replacePattern("Lorem ipsum  dolor   sit", "( +)([a-z]+)", "_$2")  = "Lorem_ipsum_dolor_sit"
+         * </pre>
+         *
+         * @param text        the source string
+         * @param regex       the regular expression to which this string is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return The resulting {@code String}
+         * @see #replaceAll(String, String, String)
+         * @see String#replaceAll(String, String)
+         * @see Pattern#DOTALL
+         */
+        public static String replacePattern(final String text, final String regex, final String replacement) {
+            if (text == null || regex == null || replacement == null) {
+                return text;
+            }
+            // DOTALL only changes what '.' matches, so literals are not affected
+            if (isLiteral(regex, replacement)) {
+                return replaceLiteral(text, regex, replacement, true);
+            }
+            return PATTERNS.get(regex, Pattern.DOTALL).matcher(text).replaceAll(replacement);
+        }
+
+        /**
+         * <p>Replaces each match of a regular expression in a stream of characters, as
+         * {@link #replaceAll(String, Pattern, String)} does for a String, in constant memory.</p>
+         *
+         * <p>The input is read in chunks of {@value #STREAM_CHUNK} chars. A match that may still change with more
+         * input, because the regex engine hit the end of the chunk, waits for the next chunk; so do the last
+         * {@value #STREAM_WINDOW} chars if a match may start there. A match longer than the chunk and window can
+         * therefore be cut short. The {@value #STREAM_CONTEXT} chars before each chunk stay visible to lookbehind,
+         * {@code \b} and the like, and {@code ^} only matches at the start of the whole input. {@code \G} matches
+         * where the previous match ended in the whole input, not at the start of each chunk.</p>
+         *
+         * <p>A {@code null} regex or replacement copies the input unchanged. Neither stream is closed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacements, not null
+         * @param regex       the regular expression pattern to which the text is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the number of replacements made
+         * @throws IOException if reading or writing fails
+         * @see java.util.regex.Matcher#replaceAll(String)
+         */
+        public static long replaceAll(final Reader in, final Writer out, final Pattern regex, final String replacement)
+            throws IOException {
+            return replace(in, out, regex, replacement, true);
+        }
+
+        /**
+         * <p>Replaces each match of a regular expression in a stream of characters, as
+         * {@link #replaceAll(String, String, String)} does for a String. See
+         * {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacements, not null
+         * @param regex       the regular expression to which the text is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the number of replacements made
+         * @throws IOException if reading or writing fails
+         * @throws java.util.regex.PatternSyntaxException if the regular expression's syntax is invalid
+         */
+        public static long replaceAll(final Reader in, final Writer out, final String regex, final String replacement)
+            throws IOException {
+            return replace(in, out, regex == null ? null : PATTERNS.get(regex, 0), replacement, true);
+        }
+
+        /**
+         * <p>Replaces the first match of a regular expression in a stream of characters, as
+         * {@link #replaceFirst(String, Pattern, String)} does for a String. See
+         * {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacement, not null
+         * @param regex       the regular expression pattern to which the text is to be matched
+         * @param replacement the string to be substituted for the first match
+         * @return the number of replacements made, 0 or 1
+         * @throws IOException if reading or writing fails
+         */
+        public static long replaceFirst(final Reader in, final Writer out, final Pattern regex,
+                                        final String replacement) throws IOException {
+            return replace(in, out, regex, replacement, false);
+        }
+
+        /**
+         * <p>Replaces the first match of a regular expression in a stream of characters, as
+         * {@link #replaceFirst(String, String, String)} does for a String. See
+         * {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacement, not null
+         * @param regex       the regular expression to which the text is to be matched
+         * @param replacement the string to be substituted for the first match
+         * @return the number of replacements made, 0 or 1
+         * @throws IOException if reading or writing fails
+         * @throws java.util.regex.PatternSyntaxException if the regular expression's syntax is invalid
+         */
+        public static long replaceFirst(final Reader in, final Writer out, final String regex,
+                                        final String replacement) throws IOException {
+            return replace(in, out, regex == null ? null : PATTERNS.get(regex, 0), replacement, false);
+        }
+
+        /**
+         * <p>Replaces each match of a regular expression in a stream of characters using the {@link Pattern#DOTALL}
+         * option, as {@link #replacePattern(String, String, String)} does for a String. See
+         * {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacements, not null
+         * @param regex       the regular expression to which the text is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the number of replacements made
+         * @throws IOException if reading or writing fails
+         */
+        public static long replacePattern(final Reader in, final Writer out, final String regex,
+                                          final String replacement) throws IOException {
+            return replace(in, out, regex == null ? null : PATTERNS.get(regex, Pattern.DOTALL), replacement, true);
+        }
+
+        /**
+         * <p>Replaces each match of a regular expression in the bytes of a channel, decoded and encoded with the
+         * given charset. See {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is
+         * processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacements, not null
+         * @param charset     the encoding of both channels
+         * @param regex       the regular expression pattern to which the text is to be matched
+         * @param replacement the string to be substituted for each match
+         * @return the number of replacements made
+         * @throws IOException if reading or writing fails
+         */
+        public static long replaceAll(final ReadableByteChannel in, final WritableByteChannel out,
+                                      final Charset charset, final Pattern regex, final String replacement)
+            throws IOException {
+            return replace(in, out, charset, regex, replacement, true);
+        }
+
+        /**
+         * <p>Replaces the first match of a regular expression in the bytes of a channel, decoded and encoded with the
+         * given charset. See {@link #replaceAll(Reader, Writer, Pattern, String)} for how the stream is
+         * processed.</p>
+         *
+         * @param in          the text to search and replace in, not null
+         * @param out         where to write the text with the replacement, not null
+         * @param charset     the encoding of both channels
+         * @param regex       the regular expression pattern to which the text is to be matched
+         * @param replacement the string to be substituted for the first match
+         * @return the number of replacements made, 0 or 1
+         * @throws IOException if reading or writing fails
+         */
+        public static long replaceFirst(final ReadableByteChannel in, final WritableByteChannel out,
+                                        final Charset charset, final Pattern regex, final String replacement)
+            throws IOException {
+            return replace(in, out, charset, regex, replacement, false);
+        }
+
+        private static long replace(final ReadableByteChannel in, final WritableByteChannel out,
+                                    final Charset charset, final Pattern regex, final String replacement,
+                                    final boolean all) throws IOException {
+            final Reader reader = Channels.newReader(in, charset.newDecoder(), STREAM_CHUNK);
+            final Writer writer = Channels.newWriter(out, charset.newEncoder(), STREAM_CHUNK);
+            final long count = replace(reader, writer, regex, replacement, all);
+            // the writer buffers; closing it would close the channel as well
+            writer.flush();
+            return count;
+        }
+
+        private static long replace(final Reader in, final Writer out, final Pattern regex, final String replacement,
+                                    final boolean all) throws IOException {
+            // a chunk that does not start where the last match ended starts with \G unable to match
+            final String unanchoredRegex = regex == null ? null : withoutLastMatchAnchor(regex);
+            final Pattern unanchored = unanchoredRegex == null ? regex
+                : Pattern.compile(unanchoredRegex, regex.flags());
+            final char[] buffer = new char[STREAM_CONTEXT + STREAM_CHUNK + STREAM_WINDOW];
+            final StringBuffer replaced = new StringBuffer();
+            boolean searching = regex != null && replacement != null;
+            boolean eof = false;
+            // buffer[0, start) is context that was written already, buffer[start, length) is still to do
+            int start = 0;
+            int length = 0;
+            // whether the last match was empty and ended at start, so the next search must begin after it
+            boolean emptyAtStart = false;
+            // where the last match ended, or the input starts, relative to the buffer
+            int lastEnd = 0;
+            long count = 0;
+            while (!eof || start < length) {
+                while (!eof && length < buffer.length) {
+                    final int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+
+                int done = start;
+                int keep = length;
+                if (searching && (start < length || eof && !emptyAtStart)) {
+                    final Pattern first = emptyAtStart || lastEnd != start ? unanchored : regex;
+                    final Matcher matcher = first.matcher(CharBuffer.wrap(buffer, 0, length));
+                    matcher.useTransparentBounds(true).useAnchoringBounds(false);
+                    matcher.region(Math.min(emptyAtStart ? start + 1 : start, length), length);
+                    replaced.setLength(0);
+                    boolean appended = false;
+                    while (true) {
+                        if (!matcher.find()) {
+                            // no match yet, but one may start in the last chars if the engine reached the end
+                            keep = eof || !matcher.hitEnd() ? length : Math.max(done, length - STREAM_WINDOW);
+                            break;
+                        }
+                        final boolean settled = eof || !matcher.hitEnd() && matcher.end() < length;
+                        keep = Math.min(matcher.start(), Math.max(done, length - STREAM_WINDOW));
+                        // a match filling the whole buffer is taken as it is, so the stream keeps moving
+                        if (!settled && keep > start) {
+                            break;
+                        }
+                        matcher.appendReplacement(replaced, replacement);
+                        appended = true;
+                        count++;
+                        done = matcher.end();
+                        lastEnd = done;
+                        emptyAtStart = matcher.start() == matcher.end();
+                        if (matcher.pattern() != regex) {
+                            // keeps the position, so \G now matches where this match ended
+                            matcher.usePattern(regex);
+                        }
+                        if (!all) {
+                            searching = false;
+                            keep = length;
+                            break;
+                        }
+                    }
+                    if (appended) {
+                        // replaced starts with the context, which was written before
+                        out.append(replaced, start, replaced.length());
+                    }
+                }
+                if (done < keep || !searching) {
+                    emptyAtStart = false;
+                }
+                out.write(buffer, done, keep - done);
+                if (eof && keep == length) {
+                    break;
+                }
+
+                // keep some context before the chars still to do
+                final int from = Math.max(0, keep - STREAM_CONTEXT);
+                System.arraycopy(buffer, from, buffer, 0, length - from);
+                length -= from;
+                start = keep - from;
+                lastEnd -= from;
+            }
+            return count;
+        }
+
+        /**
+         * Checks whether a replacement can be done without the regex engine. The regex must not be empty, which
+         * matches between all chars, nor contain surrogates, which the engine matches by code point only.
+         *
+         * @param regex       the regular expression, not null
+         * @param replacement the replacement, not null
+         * @return {@code true} if the regex only matches itself and the replacement is inserted as it is
+         */
+        static boolean isLiteral(final String regex, final String replacement) {
+            if (regex.isEmpty() || replacement.indexOf('$') >= 0 || replacement.indexOf('\\') >= 0) {
+                return false;
+            }
+            for (int i = 0; i < regex.length(); i++) {
+                final char c = regex.charAt(i);
+                if (METACHARACTERS.indexOf(c) >= 0 || Character.isSurrogate(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Finds the {@code \G} anchors of a regex, which match where the previous match ended. Escaped backslashes,
+         * quoted sections and {@link Pattern#LITERAL} patterns have none.
+         *
+         * @param regex the compiled regular expression, not null
+         * @return the regex with each {@code \G} replaced by a group that never matches, {@code null} if it has none
+         */
+        static String withoutLastMatchAnchor(final Pattern regex) {
+            if ((regex.flags() & Pattern.LITERAL) != 0) {
+                return null;
+            }
+            final String pattern = regex.pattern();
+            StringBuilder result = null;
+            int from = 0;
+            int i = 0;
+            while (i + 1 < pattern.length()) {
+                if (pattern.charAt(i) != '\\') {
+                    i++;
+                    continue;
+                }
+                final char next = pattern.charAt(i + 1);
+                if (next == 'Q') {
+                    final int quoteEnd = pattern.indexOf("\\E", i + 2);
+                    i = quoteEnd < 0 ? pattern.length() : quoteEnd + 2;
+                    continue;
+                }
+                if (next == 'G') {
+                    if (result == null) {
+                        result = new StringBuilder(pattern.length() + 8);
+                    }
+                    result.append(pattern, from, i).append("(?!)");
+                    from = i + 2;
+                }
+                i += 2;
+            }
+            return result == null ? null : result.append(pattern, from, pattern.length()).toString();
+        }
+
+        private static String replaceLiteral(final String text, final String search, final String replacement,
+                                             final boolean all) {
+            int found = text.indexOf(search);
+            if (found < 0) {
+                return text;
+            }
+            final int searchLength = search.length();
+            int[] matches = new int[8];
+            int count = 0;
+            while (found >= 0) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = found;
+                found = all ? text.indexOf(search, found + searchLength) : -1;
+            }
+
+            final char[] result = new char[text.length() + count * (replacement.length() - searchLength)];
+            int from = 0;
+            int to = 0;
+            for (int m = 0; m < count; m++) {
+                text.getChars(from, matches[m], result, to);
+                to += matches[m] - from;
+                replacement.getChars(0, replacement.length(), result, to);
+                to += replacement.length();
+                from = matches[m] + searchLength;
+            }
+            text.getChars(from, text.length(), result, to);
+            return new String(result);
+        }
+
+        /**
+         * <p>A thread-safe, size-bounded cache of compiled {@link Pattern}s, keyed by regular expression and
+         * flags.</p>
+         *
+         * <p>Lookups are lock-free: a hit reads a {@link ConcurrentHashMap} and marks the entry as recently used.
+         * Once the cache grows past its size, entries are evicted with the CLOCK (second chance) approximation of
+         * LRU: a hand sweeps the entries, clearing the mark of recently used ones and evicting the first one whose
+         * mark is already clear. Only eviction takes a lock. Invalid expressions are not cached; the
+         * {@link java.util.regex.PatternSyntaxException} goes to the caller.</p>
+         *
+         * <p>Hits, misses and evictions are counted, so callers can check whether the size fits their working
+         * set.</p>
+         */
+        public static final class PatternCache {
+            private final int maximumSize;
+            private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+            private final LongAdder hits = new LongAdder();
+            private final LongAdder misses = new LongAdder();
+            private final LongAdder evictions = new LongAdder();
+            private final Object evictionLock = new Object();
+            // guarded by evictionLock
+            private Iterator<Map.Entry<Key, Entry>> hand;
+
+            /**
+             * @param maximumSize the number of patterns to keep, at least 1
+             */
+            public PatternCache(final int maximumSize) {
+                if (maximumSize < 1) {
+                    throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+                }
+                this.maximumSize = maximumSize;
+            }
+
+            /**
+             * <p>Returns the compiled pattern, compiling and caching it on the first request.</p>
+             *
+             * @param regex the regular expression, not null
+             * @param flags the match flags, as for {@link Pattern#compile(String, int)}
+             * @return the compiled pattern
+             * @throws java.util.regex.PatternSyntaxException if the regular expression's syntax is invalid
+             */
+            public Pattern get(final String regex, final int flags) {
+                final Key key = new Key(regex, flags);
+                final Entry entry = entries.get(key);
+                if (entry != null) {
+                    hits.increment();
+                    // only write when needed, so hot entries do not bounce their cache line between cores
+                    if (!entry.referenced) {
+                        entry.referenced = true;
+                    }
+                    return entry.pattern;
+                }
+                misses.increment();
+                final Entry compiled = new Entry(Pattern.compile(regex, flags));
+                final Entry raced = entries.putIfAbsent(key, compiled);
+                if (raced != null) {
+                    return raced.pattern;
+                }
+                if (entries.size() > maximumSize) {
+                    evict();
+                }
+                return compiled.pattern;
+            }
+
+            private void evict() {
+                synchronized (evictionLock) {
+                    while (entries.size() > maximumSize) {
+                        if (hand == null || !hand.hasNext()) {
+                            hand = entries.entrySet().iterator();
+                        }
+                        final Map.Entry<Key, Entry> candidate = hand.next();
+                        final Entry entry = candidate.getValue();
+                        if (entry.referenced) {
+                            entry.referenced = false;
+                        } else if (entries.remove(candidate.getKey(), entry)) {
+                            evictions.increment();
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Drops every cached pattern. The counters are kept.
+             */
+            public void clear() {
+                synchronized (evictionLock) {
+                    entries.clear();
+                    hand = null;
+                }
+            }
+
+            /**
+             * @return the number of patterns cached now
+             */
+            public int size() {
+                return entries.size();
+            }
+
+            /**
+             * @return the number of patterns the cache keeps at most
+             */
+            public int getMaximumSize() {
+                return maximumSize;
+            }
+
+            /**
+             * @return the number of lookups that found their pattern compiled
+             */
+            public long getHitCount() {
+                return hits.sum();
+            }
+
+            /**
+             * @return the number of lookups that had to compile their pattern
+             */
+            public long getMissCount() {
+                return misses.sum();
+            }
+
+            /**
+             * @return the number of patterns dropped to stay within the maximum size
+             */
+            public long getEvictionCount() {
+                return evictions.sum();
+            }
+
+            @Override
+            public String toString() {
+                return "PatternCache[size=" + size() + "/" + maximumSize + ", hits=" + getHitCount() + ", misses="
+                    + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+            }
+
+            private static final class Key {
+                private final String regex;
+                private final int flags;
+
+                Key(final String regex, final int flags) {
+                    this.regex = regex;
+                    this.flags = flags;
+                }
+
+                @Override
+                public boolean equals(final Object obj) {
+                    if (!(obj instanceof Key)) {
+                        return false;
+                    }
+                    final Key other = (Key) obj;
+                    return flags == other.flags && regex.equals(other.regex);
+                }
+
+                @Override
+                public int hashCode() {
+                    return regex.hashCode() * 31 + flags;
+                }
+            }
+
+            private static final class Entry {
+                private final Pattern pattern;
+                private volatile boolean referenced;
+
+                Entry(final Pattern pattern) {
+                    this.pattern = pattern;
+                }
+            }
         }
 
         /**
-         * <p>Replaces the first substring of the text string that matches the given regular expression
-         * with the given replacement.</p>
-         * <p>
-         * This method is a {@code null} safe equivalent to:
-         * <ul>
-         *  <li>{@code text.replaceFirst(regex, replacement)}</li>
-         *  <li>{@code Pattern.compile(regex).matcher(text).replaceFirst(replacement)}</li>
-         * </ul>
+         * <p>An ordered list of (regular expression, replacement) rules, applied to a text in one left-to-right pass
+         * instead of one {@link RegExTools#replaceAll(String, String, String)} call per rule.</p>
          *
-         * <p>A {@code null} reference passed to this method is a no-op.</p>
+         * <p>The rules are combined into a single alternation, each rule in a capturing group of its own, so the
+         * text is scanned once and the result is built in one buffer. Where rules overlap, the match starting first
+         * wins; of the rules matching at the same index, the one added first wins, whatever the match lengths. The
+         * replaced text is not searched again, so one rule never sees the output of another.</p>
          *
-         * <p>The {@link Pattern#DOTALL} option is NOT automatically added.
-         * To use the DOTALL option prepend {@code "(?s)"} to the regex.
-         * DOTALL is also known as single-line mode in Perl.</p>
+         * <p>Replacements use the syntax of {@link Matcher#appendReplacement(StringBuffer, String)}, with group
+         * numbers counted within their own rule. The back references of a rule are renumbered to match, while group
+         * names are shared by all rules and must therefore be unique. Since the rules end up in one pattern, a rule in
+         * comments mode must not end with a comment.</p>
+         *
+         * <p>The rules are immutable and safe to share between threads.</p>
          *
          * <pre>
-         * StringTools.replaceFirst(null, *, *)       = null
-         * StringTools.replaceFirst("any", (String) null, *)   = "any"
-         * StringTools.replaceFirst("any", *, null)   = "any"
-         * StringTools.replaceFirst("", "", "zzz")    = "zzz"
-         * StringTools.replaceFirst("", ".*", "zzz")  = "zzz"
-         * StringTools.replaceFirst("", ".+", "zzz")  = ""
-         * StringTools.replaceFirst("abc", "", "ZZ")  = "ZZabc"
-         * StringTools.replaceFirst("&lt;__&gt;\n&lt;__&gt;", "&lt;.*&gt;", "z")      = "z\n&lt;__&gt;"
-         * StringTools.replaceFirst("&lt;__&gt;\n&lt;__&gt;", "(?s)&lt;.*&gt;", "z")  = "z"
-         * StringTools.replaceFirst("ABCabc123", "[a-z]", "_")          = "ABC_bc123"
-         * StringTools.replaceFirst("ABCabc123abc", "[^A-Z0-9]+", "_")  = "ABC_123abc"
-         * StringTools.replaceFirst("ABCabc123abc", "[^A-Z0-9]+", "")   = "ABC123abc"
-         * StringTools.replaceFirst("Lorem ipsum  dolor   sit", "( +)([a-z]+)", "_$2")  = "Lorem_ipsum  dolor   sit"
+         * ReplacementRules escape = ReplacementRules.builder()
+         *     .addLiteral("&amp;", "&amp;amp;")
+         *     .addLiteral("&lt;", "&amp;lt;")
+         *     .add("\\s+", " ")
+         *     .build();
+         * escape.replaceAll("a &lt;\n b")   = "a &amp;lt; b"
          * </pre>
-         *
-         * @param text        text to search and replace in, may be null
-         * @param regex       the regular expression to which this string is to be matched
-         * @param replacement the string to be substituted for the first match
-         * @return the text with the first replacement processed,
-         * {@code null} if null String input
-         * @throws java.util.regex.PatternSyntaxException if the regular expression's syntax is invalid
-         * @see String#replaceFirst(String, String)
-         * @see Pattern
-         * @see Pattern#DOTALL
          */
-        public static String replaceFirst(final String text, final String regex, final String replacement) {
-            if (text == null || regex == null || replacement == null) {
-                return text;
+        public static final class ReplacementRules {
+            private static final int TEXT = -1;
+            private static final int NAMED = -2;
+            // escapes that may stand for a line break, as a char or a class containing one
+            private static final String LINE_BREAK_ESCAPES = "nsvRXWDHxuc0pPN";
+            private static final Pattern INLINE_DOTALL = Pattern.compile("\\(\\?[a-zA-Z-]*s");
+
+            // null if there are no rules
+            private final Pattern pattern;
+            // the pattern in a lookahead, to find where matches start without consuming past a chunk boundary
+            private final Pattern startPattern;
+            // whether a match may run across a line break, and so past the end of a parallel chunk
+            private final boolean multiline;
+            // per rule: the group holding its match, and its replacement as text parts and group references
+            private final int[] ruleGroups;
+            private final String[][] partTexts;
+            private final int[][] partGroups;
+
+            private ReplacementRules(final Builder builder) {
+                final int size = builder.regexes.size();
+                ruleGroups = new int[size];
+                partTexts = new String[size][];
+                partGroups = new int[size][];
+                final StringBuilder combined = new StringBuilder();
+                int groups = 0;
+                for (int r = 0; r < size; r++) {
+                    final String regex = builder.regexes.get(r);
+                    // compiled alone first, so a syntax error points into the rule and not the combined pattern
+                    final int ruleGroupCount = Pattern.compile(regex).matcher(EMPTY).groupCount();
+                    if (size == 1) {
+                        // a lone rule needs no group of its own, and keeps Java's fast search for a literal prefix
+                        combined.append(regex);
+                    } else {
+                        ruleGroups[r] = ++groups;
+                        if (r > 0) {
+                            combined.append('|');
+                        }
+                        combined.append('(');
+                        renumber(regex, groups, combined);
+                        combined.append(')');
+                        groups += ruleGroupCount;
+                    }
+                    parseReplacement(r, regex, ruleGroupCount, builder.replacements.get(r), builder.literals.get(r));
+                }
+                pattern = size == 0 ? null : Pattern.compile(combined.toString());
+                startPattern = size == 0 ? null : Pattern.compile("(?=" + combined + ")");
+                multiline = mayMatchLineBreak(combined);
             }
-            return text.replaceFirst(regex, replacement);
-        }
 
-        /**
-         * <p>Replaces each substring of the source String that matches the given regular expression with the given
-         * replacement using the {@link Pattern#DOTALL} option. DOTALL is also known as single-line mode in Perl.</p>
-         * <p>
-         * This call is a {@code null} safe equivalent to:
-         * <ul>
-         * <li>{@code text.replaceAll(&quot;(?s)&quot; + regex, replacement)}</li>
-         * <li>{@code Pattern.compile(regex, Pattern.DOTALL).matcher(text).replaceAll(replacement)}</li>
-         * </ul>
-         *
-         * <p>A {@code null} reference passed to this method is a no-op.</p>
-         *
-         * <pre>
-         * StringTools.replacePattern(null, *, *)       = null
-         * StringTools.replacePattern("any", (String) null, *)   = "any"
-         * StringTools.replacePattern("any", *, null)   = "any"
-         * StringTools.replacePattern("", "", "zzz")    = "zzz"
-         * StringTools.replacePattern("", ".*", "zzz")  = "zzz"
-         * StringTools.replacePattern("", ".+", "zzz")  = ""
-         * StringTools.replacePattern("&lt;__&gt;\n&lt;__&gt;", "&lt;.*&gt;", "z")       = "z"
-         * StringTools.replacePattern("ABCabc123", "[a-z]", "_")       = "ABC___123"
-         * StringTools.replacePattern("ABCabc123", "[^A-Z0-9]+", "_")  = "ABC_123"
-         * StringTools.replacePattern("ABCabc123", "[^A-Z0-9]+", "")   = "ABC123"
-         * StringTools.replacePattern("Lorem ipsum  dolor   sit", "( +)([a-z]+)", "_$2")  = "Lorem_ipsum_dolor_sit"
-         * </pre>
-         *
-         * @param text        the source string
-         * @param regex       the regular expression to which this string is to be matched
-         * @param replacement the string to be substituted for each match
-         * @return The resulting {@code String}
-         * @see #replaceAll(String, String, String)
-         * @see String#replaceAll(String, String)
-         * @see Pattern#DOTALL
-         */
-        public static String replacePattern(final String text, final String regex, final String replacement) {
-            if (text == null || regex == null || replacement == null) {
-                return text;
+            /**
+             * Whether the regex may match a line break, erring on the side of {@code true}: besides a line break
+             * itself, any escape that may stand for one, a negated class, a range around it and {@code .} with an
+             * inline {@code s} flag anywhere count.
+             */
+            private static boolean mayMatchLineBreak(final CharSequence regex) {
+                final boolean dotAll = INLINE_DOTALL.matcher(regex).find();
+                int classDepth = 0;
+                // the last char of a class that may start a range, -1 after an escape
+                int rangeStart = -1;
+                for (int i = 0; i < regex.length(); i++) {
+                    final char c = regex.charAt(i);
+                    if (c == '\n' || c == '^' && classDepth > 0) {
+                        return true;
+                    } else if (c == '\\' && i + 1 < regex.length()) {
+                        final char escaped = regex.charAt(++i);
+                        if (escaped == 'Q') {
+                            final int quoteEnd = regex.toString().indexOf("\\E", i);
+                            final int end = quoteEnd < 0 ? regex.length() : quoteEnd;
+                            if (regex.subSequence(i, end).toString().indexOf('\n') >= 0) {
+                                return true;
+                            }
+                            i = end + 1;
+                        } else if (LINE_BREAK_ESCAPES.indexOf(escaped) >= 0) {
+                            return true;
+                        }
+                        rangeStart = -1;
+                    } else if (c == '[') {
+                        classDepth++;
+                        rangeStart = -1;
+                    } else if (c == ']' && classDepth > 0) {
+                        classDepth--;
+                        rangeStart = -1;
+                    } else if (c == '-' && classDepth > 0 && i + 1 < regex.length() && regex.charAt(i + 1) != ']') {
+                        final char rangeEnd = regex.charAt(i + 1);
+                        if (rangeStart < 0 || rangeEnd == '\\' || rangeStart <= '\n' && '\n' <= rangeEnd) {
+                            return true;
+                        }
+                    } else if (c == '.' && classDepth == 0 && dotAll) {
+                        return true;
+                    } else {
+                        rangeStart = classDepth > 0 ? c : -1;
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Appends the regex with each back reference {@code \n} shifted by {@code offset}, as the rule's groups
+             * are once it sits after the groups of the rules before it.
+             */
+            private static void renumber(final String regex, final int offset, final StringBuilder out) {
+                int opened = 0;
+                int classDepth = 0;
+                int i = 0;
+                while (i < regex.length()) {
+                    final char c = regex.charAt(i);
+                    if (c == '\\' && i + 1 < regex.length()) {
+                        final char next = regex.charAt(i + 1);
+                        if (next == 'Q') {
+                            final int quoteEnd = regex.indexOf("\\E", i + 2);
+                            final int end = quoteEnd < 0 ? regex.length() : quoteEnd + 2;
+                            out.append(regex, i, end);
+                            i = end;
+                        } else if (classDepth == 0 && next >= '1' && next <= '9') {
+                            // read as many digits as name a group opened so far, as Pattern does
+                            int ref = next - '0';
+                            i += 2;
+                            while (i < regex.length() && Character.isDigit(regex.charAt(i))
+                                && ref * 10 + regex.charAt(i) - '0' <= opened) {
+                                ref = ref * 10 + regex.charAt(i) - '0';
+                                i++;
+                            }
+                            // in a group of its own, so a digit after it is not read as part of the number
+                            out.append("(?:\\").append(ref + offset).append(')');
+                        } else {
+                            out.append(c).append(next);
+                            i += 2;
+                        }
+                        continue;
+                    }
+                    if (c == '[') {
+                        classDepth++;
+                    } else if (c == ']' && classDepth > 0) {
+                        classDepth--;
+                    } else if (c == '(' && classDepth == 0 && isCapturing(regex, i)) {
+                        opened++;
+                    }
+                    out.append(c);
+                    i++;
+                }
+            }
+
+            private static boolean isCapturing(final String regex, final int open) {
+                if (!regex.startsWith("?", open + 1)) {
+                    return true;
+                }
+                return regex.startsWith("?<", open + 1) && open + 3 < regex.length()
+                    && regex.charAt(open + 3) != '=' && regex.charAt(open + 3) != '!';
+            }
+
+            private void parseReplacement(final int rule, final String regex, final int groupCount,
+                                          final String replacement, final boolean literal) {
+                final List<String> texts = new ArrayList<>();
+                final List<Integer> groups = new ArrayList<>();
+                parseReplacement(regex, groupCount, replacement, literal, ruleGroups[rule], texts, groups);
+                partTexts[rule] = texts.toArray(new String[0]);
+                partGroups[rule] = new int[groups.size()];
+                for (int p = 0; p < partGroups[rule].length; p++) {
+                    partGroups[rule][p] = groups.get(p);
+                }
+            }
+
+            /**
+             * Splits a replacement into text parts and group references, failing as {@link Matcher} would on a
+             * malformed one, but before any match.
+             *
+             * @param firstGroup the group of the whole match, which the group numbers of the replacement count from
+             * @throws IllegalArgumentException  if the replacement is malformed or refers to an unknown group name
+             * @throws IndexOutOfBoundsException if the replacement refers to a group number the regex does not have
+             */
+            static void parseReplacement(final String regex, final int groupCount, final String replacement,
+                                         final boolean literal, final int firstGroup, final List<String> texts,
+                                         final List<Integer> groups) {
+                final StringBuilder text = new StringBuilder();
+                int i = 0;
+                while (!literal && i < replacement.length()) {
+                    final char c = replacement.charAt(i++);
+                    if (c == '\\') {
+                        if (i == replacement.length()) {
+                            throw new IllegalArgumentException("character to be escaped is missing");
+                        }
+                        text.append(replacement.charAt(i++));
+                        continue;
+                    }
+                    if (c != '$') {
+                        text.append(c);
+                        continue;
+                    }
+                    if (i == replacement.length()) {
+                        throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                    }
+                    if (text.length() > 0) {
+                        texts.add(text.toString());
+                        groups.add(TEXT);
+                        text.setLength(0);
+                    }
+                    if (replacement.charAt(i) == '{') {
+                        final int close = replacement.indexOf('}', i);
+                        if (close < 0) {
+                            throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                        }
+                        final String name = replacement.substring(i + 1, close);
+                        if (!regex.contains("(?<" + name + ">")) {
+                            throw new IllegalArgumentException("No group with name {" + name + "}");
+                        }
+                        texts.add(name);
+                        groups.add(NAMED);
+                        i = close + 1;
+                        continue;
+                    }
+                    int ref = replacement.charAt(i++) - '0';
+                    if (ref < 0 || ref > 9) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    // as many digits as still name a group of the rule, as Matcher does
+                    while (i < replacement.length() && Character.isDigit(replacement.charAt(i))
+                        && ref * 10 + replacement.charAt(i) - '0' <= groupCount) {
+                        ref = ref * 10 + replacement.charAt(i++) - '0';
+                    }
+                    if (ref > groupCount) {
+                        throw new IndexOutOfBoundsException("No group " + ref);
+                    }
+                    texts.add(null);
+                    groups.add(firstGroup + ref);
+                }
+                if (literal) {
+                    text.append(replacement);
+                }
+                if (text.length() > 0) {
+                    texts.add(text.toString());
+                    groups.add(TEXT);
+                }
+            }
+
+            /**
+             * @return a builder to add the rules to, in priority order
+             */
+            public static Builder builder() {
+                return new Builder();
+            }
+
+            /**
+             * @return the number of rules
+             */
+            public int size() {
+                return ruleGroups.length;
+            }
+
+            /**
+             * <p>Applies every rule to the text in one pass.</p>
+             *
+             * <pre>
+             * rules.replaceAll(null)  = null
+             * rules.replaceAll("")    = "", unless a rule matches the empty string
+             * </pre>
+             *
+             * @param text the text to replace in, may be null
+             * @return the text with every match replaced, {@code null} if null input
+             */
+            public String replaceAll(final CharSequence text) {
+                if (text == null) {
+                    return null;
+                }
+                final Matcher matcher = pattern == null ? null : pattern.matcher(text);
+                if (matcher == null || !matcher.find()) {
+                    return text.toString();
+                }
+                final StringBuilder result = new StringBuilder(text.length() + 16);
+                int from = 0;
+                do {
+                    result.append(text, from, matcher.start());
+                    appendReplacement(matcher, text, result);
+                    from = matcher.end();
+                } while (matcher.find());
+                return result.append(text, from, text.length()).toString();
+            }
+
+            private void appendReplacement(final Matcher matcher, final CharSequence text,
+                                           final StringBuilder result) {
+                // only the group of the alternative that matched took part in the match
+                int rule = 0;
+                while (matcher.start(ruleGroups[rule]) < 0) {
+                    rule++;
+                }
+                final String[] texts = partTexts[rule];
+                final int[] groups = partGroups[rule];
+                for (int p = 0; p < groups.length; p++) {
+                    if (groups[p] == TEXT) {
+                        result.append(texts[p]);
+                    } else if (groups[p] == NAMED) {
+                        if (matcher.start(texts[p]) >= 0) {
+                            result.append(text, matcher.start(texts[p]), matcher.end(texts[p]));
+                        }
+                    } else if (matcher.start(groups[p]) >= 0) {
+                        result.append(text, matcher.start(groups[p]), matcher.end(groups[p]));
+                    }
+                }
+            }
+
+            /**
+             * <p>Applies every rule to the text as {@link #replaceAll(CharSequence)} does, with the text split into
+             * chunks that are replaced in parallel on the common {@link ForkJoinPool}.</p>
+             *
+             * <p>The chunks end after a line break where there is one near the ideal chunk end, so rules whose
+             * matches stay within a line, the common case, never straddle two chunks. Each chunk is only searched up
+             * to its end, with transparent, non-anchoring bounds, so lookaround and anchors see the text before it. A
+             * search that may come out differently on the whole text is redone there, and when a match runs past
+             * the end of its chunk, the next chunk is replaced again from the end of that match, as the sequential
+             * scan would continue; the result is therefore always that of {@link #replaceAll(CharSequence)}, only
+             * slower for rules that may match a line break. Texts shorter than
+             * {@value RegExTools#PARALLEL_MIN_LENGTH} chars, a single-threaded common pool and rules using
+             * {@code \G}, which depends on where the previous match ended, are replaced sequentially.</p>
+             *
+             * @param text the text to replace in, may be null
+             * @return the text with every match replaced, {@code null} if null input
+             */
+            public String replaceAllParallel(final CharSequence text) {
+                final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+                if (text == null || pattern == null || text.length() < PARALLEL_MIN_LENGTH || parallelism < 2
+                    || withoutLastMatchAnchor(pattern) != null) {
+                    return replaceAll(text);
+                }
+                final int length = text.length();
+                final int chunk = Math.max(PARALLEL_CHUNK, length / (parallelism * 4));
+                final List<Slice> slices = new ArrayList<>();
+                for (int from = 0; from < length; ) {
+                    final Slice slice = new Slice(text, from, chunkEnd(text, from + chunk));
+                    slice.fork();
+                    slices.add(slice);
+                    from = slice.boundary;
+                }
+
+                final List<Slice> parts = new ArrayList<>(slices.size());
+                int resultLength = 0;
+                boolean replaced = false;
+                // where the sequential scan would continue
+                int next = 0;
+                for (final Slice slice : slices) {
+                    final Slice done;
+                    if (slice.from == next) {
+                        done = slice;
+                        done.join();
+                    } else {
+                        // a match of the chunk before ran past its end
+                        slice.cancel(false);
+                        if (next >= slice.boundary && slice.boundary < length) {
+                            continue;
+                        }
+                        done = new Slice(text, next, slice.boundary);
+                        done.invoke();
+                    }
+                    parts.add(done);
+                    if (done.result == null) {
+                        resultLength += done.end - done.from;
+                    } else {
+                        replaced = true;
+                        resultLength += done.result.length();
+                    }
+                    next = done.end;
+                }
+                if (!replaced) {
+                    return text.toString();
+                }
+                final StringBuilder result = new StringBuilder(resultLength);
+                for (final Slice part : parts) {
+                    if (part.result == null) {
+                        result.append(text, part.from, part.end);
+                    } else {
+                        result.append(part.result);
+                    }
+                }
+                return result.toString();
+            }
+
+            /**
+             * @return the index after the first line break at or after {@code target}, if it is within a chunk,
+             * else {@code target} itself moved off the middle of a surrogate pair
+             */
+            private static int chunkEnd(final CharSequence text, final int target) {
+                final int length = text.length();
+                if (target >= length) {
+                    return length;
+                }
+                final int limit = (int) Math.min(length, (long) target + PARALLEL_CHUNK);
+                for (int i = target; i < limit; i++) {
+                    if (text.charAt(i) == '\n') {
+                        return i + 1;
+                    }
+                }
+                return Character.isLowSurrogate(text.charAt(target)) && Character.isHighSurrogate(
+                    text.charAt(target - 1)) ? target + 1 : target;
+            }
+
+            /**
+             * The replacement of the matches starting in {@code [from, boundary)}, or at the end of the text in the
+             * last chunk, {@code null} if there are none. The last match may end after the boundary, so the chunk
+             * covers {@code [from, end)}.
+             *
+             * <p>Any chunk but the last is only searched up to its boundary, so a sparse chunk costs no more than
+             * its share of the sequential scan. A match whose search ran into the boundary is redone on the whole
+             * text, as is the search after the last match when a match of the rules may run across the line break
+             * the chunk ends with; these searches try the rules in a lookahead, which sees the whole text but still
+             * only tries starts within the chunk.</p>
+             */
+            private final class Slice extends RecursiveAction {
+                private static final long serialVersionUID = 1L;
+
+                private final CharSequence text;
+                private final int from;
+                private final int boundary;
+                private StringBuilder result;
+                private int end;
+
+                Slice(final CharSequence text, final int from, final int boundary) {
+                    this.text = text;
+                    this.from = from;
+                    this.boundary = boundary;
+                }
+
+                @Override
+                protected void compute() {
+                    final int length = text.length();
+                    final boolean last = boundary == length;
+                    StringBuilder out = null;
+                    final Matcher matcher = pattern.matcher(text);
+                    matcher.useTransparentBounds(true).useAnchoringBounds(false).region(from, boundary);
+                    Matcher starts = null;
+                    Matcher whole = null;
+                    int copied = from;
+                    // where the sequential scan searches next
+                    int searchFrom = from;
+                    while (true) {
+                        Matcher match = matcher;
+                        final boolean found = matcher.find();
+                        if (!last && (found ? matcher.hitEnd() || matcher.requireEnd()
+                            : multiline || text.charAt(boundary - 1) != '\n')) {
+                            // the whole text may hold a match the chunk does not, or a longer one
+                            if (starts == null) {
+                                starts = startPattern.matcher(text);
+                                starts.useTransparentBounds(true).useAnchoringBounds(false);
+                                whole = pattern.matcher(text);
+                                whole.useTransparentBounds(true).useAnchoringBounds(false);
+                            }
+                            if (!starts.region(searchFrom, boundary).find()
+                                || !whole.region(starts.start(), length).lookingAt()) {
+                                break;
+                            }
+                            match = whole;
+                        } else if (!found) {
+                            break;
+                        }
+                        // an empty match at the boundary belongs to the next chunk
+                        if (!last && match.start() >= boundary) {
+                            break;
+                        }
+                        if (out == null) {
+                            out = new StringBuilder(boundary - from + 16);
+                        }
+                        out.append(text, copied, match.start());
+                        appendReplacement(match, text, out);
+                        copied = match.end();
+                        searchFrom = match.start() == copied ? copied + 1 : copied;
+                        if (searchFrom > boundary || searchFrom == boundary && !last) {
+                            break;
+                        }
+                        if (match == whole) {
+                            matcher.region(searchFrom, boundary);
+                        }
+                    }
+                    end = Math.max(copied, boundary);
+                    result = out == null ? null : out.append(text, copied, end);
+                }
+            }
+
+            /**
+             * Collects the rules of a {@link ReplacementRules}, the first one added taking priority.
+             */
+            public static final class Builder {
+                private final List<String> regexes = new ArrayList<>();
+                private final List<String> replacements = new ArrayList<>();
+                private final List<Boolean> literals = new ArrayList<>();
+
+                private Builder() {
+                }
+
+                /**
+                 * @param regex       the regular expression to match, not null
+                 * @param replacement the replacement, with group references as for {@link Matcher}, not null
+                 * @return this builder
+                 */
+                public Builder add(final String regex, final String replacement) {
+                    return add(regex, replacement, false);
+                }
+
+                /**
+                 * <p>Adds a rule from a compiled pattern, keeping its flags except {@link Pattern#CANON_EQ}, which
+                 * cannot be set for part of a pattern.</p>
+                 *
+                 * @param regex       the pattern to match, not null
+                 * @param replacement the replacement, with group references as for {@link Matcher}, not null
+                 * @return this builder
+                 * @throws IllegalArgumentException if the pattern uses {@link Pattern#CANON_EQ}
+                 */
+                public Builder add(final Pattern regex, final String replacement) {
+                    final int flags = regex.flags();
+                    if ((flags & Pattern.CANON_EQ) != 0) {
+                        throw new IllegalArgumentException("CANON_EQ cannot be combined: " + regex);
+                    }
+                    final String body = (flags & Pattern.LITERAL) != 0
+                        ? Pattern.quote(regex.pattern()) : regex.pattern();
+                    final StringBuilder inline = new StringBuilder();
+                    appendFlag(inline, flags, Pattern.CASE_INSENSITIVE, 'i');
+                    appendFlag(inline, flags, Pattern.MULTILINE, 'm');
+                    appendFlag(inline, flags, Pattern.DOTALL, 's');
+                    appendFlag(inline, flags, Pattern.UNICODE_CASE, 'u');
+                    appendFlag(inline, flags, Pattern.COMMENTS, 'x');
+                    appendFlag(inline, flags, Pattern.UNIX_LINES, 'd');
+                    appendFlag(inline, flags, Pattern.UNICODE_CHARACTER_CLASS, 'U');
+                    // the line break ends a trailing comment in comments mode
+                    return add(inline.length() == 0 ? body : "(?" + inline + ":" + body
+                        + ((flags & Pattern.COMMENTS) != 0 ? "\n" : "") + ")", replacement, false);
+                }
+
+                private static void appendFlag(final StringBuilder inline, final int flags, final int flag,
+                                               final char letter) {
+                    if ((flags & flag) != 0) {
+                        inline.append(letter);
+                    }
+                }
+
+                /**
+                 * @param search      the text to match as it is, not empty
+                 * @param replacement the text to replace it with as it is, not null
+                 * @return this builder
+                 */
+                public Builder addLiteral(final String search, final String replacement) {
+                    if (search.isEmpty()) {
+                        throw new IllegalArgumentException("The search text must not be empty");
+                    }
+                    return add(Pattern.quote(search), replacement, true);
+                }
+
+                private Builder add(final String regex, final String replacement, final boolean literal) {
+                    if (regex == null || replacement == null) {
+                        throw new NullPointerException("The regex and replacement must not be null");
+                    }
+                    regexes.add(regex);
+                    replacements.add(replacement);
+                    literals.add(literal);
+                    return this;
+                }
+
+                /**
+                 * @return the compiled rules
+                 * @throws java.util.regex.PatternSyntaxException if a regular expression's syntax is invalid
+                 * @throws IllegalArgumentException  if a replacement is malformed or refers to a group name no rule has
+                 * @throws IndexOutOfBoundsException if a replacement refers to a group number its rule does not have
+                 */
+                public ReplacementRules build() {
+                    return new ReplacementRules(this);
+                }
             }
-            return Pattern.compile(regex, Pattern.DOTALL).matcher(text).replaceAll(replacement);
         }
 
     }
@@ -1271,6 +3726,67 @@ public class ToolBox {
             return true;
         }
 
+        /**
+         * <p>Checks if the CharSequence contains any character of a precompiled set.</p>
+         *
+         * <p>A {@code null} CharSequence or matcher will return {@code false}. Unlike the {@code char...} variant,
+         * this costs O(length of cs) whatever the size of the set.</p>
+         *
+         * <pre>
+         * StringTools.containsAny(null, *)                              = false
+         * StringTools.containsAny("", *)                                = false
+         * StringTools.containsAny(*, null)                              = false
+         * StringTools.containsAny("zzabyycdxx", CharMatcher.of("za"))  = true
+         * StringTools.containsAny("aba", CharMatcher.of("z"))          = false
+         * </pre>
+         *
+         * @param cs      the CharSequence to check, may be null
+         * @param matcher the characters to search for, may be null
+         * @return {@code true} if any of the characters are found, {@code false} if no match or null input
+         */
+        public static boolean containsAny(final CharSequence cs, final CharMatcher matcher) {
+            return indexOfAny(cs, matcher) != INDEX_NOT_FOUND;
+        }
+
+        /**
+         * <p>Checks that the CharSequence contains no character of a precompiled set.</p>
+         *
+         * <p>A {@code null} CharSequence or matcher will return {@code true}. Unlike the {@code char...} variant,
+         * this costs O(length of cs) whatever the size of the set.</p>
+         *
+         * <pre>
+         * StringTools.containsNone(null, *)                          = true
+         * StringTools.containsNone(*, null)                          = true
+         * StringTools.containsNone("abab", CharMatcher.of("xyz"))   = true
+         * StringTools.containsNone("abz", CharMatcher.of("xyz"))    = false
+         * </pre>
+         *
+         * @param cs      the CharSequence to check, may be null
+         * @param matcher the invalid characters, may be null
+         * @return true if it contains none of the invalid characters, or is null
+         */
+        public static boolean containsNone(final CharSequence cs, final CharMatcher matcher) {
+            return indexOfAny(cs, matcher) == INDEX_NOT_FOUND;
+        }
+
+        /**
+         * <p>Checks if the CharSequence contains any of a precompiled set of keywords, in one pass over it.</p>
+         *
+         * <pre>
+         * StringTools.containsAny(null, *)                                           = false
+         * StringTools.containsAny(*, null)                                           = false
+         * StringTools.containsAny("zzabyycdxx", KeywordMatcher.compile(false, "by")) = true
+         * StringTools.containsAny("zzabyycdxx", KeywordMatcher.compile(false, "yx")) = false
+         * </pre>
+         *
+         * @param cs       the CharSequence to check, may be null
+         * @param keywords the keywords to search for, may be null
+         * @return {@code true} if any of the keywords is found, {@code false} if no match or null input
+         */
+        public static boolean containsAny(final CharSequence cs, final KeywordMatcher keywords) {
+            return keywords != null && keywords.containsAny(cs);
+        }
+
         /**
          * <p>Compares two CharSequences, returning {@code true} if they represent
          * equal sequences of characters.</p>
@@ -1439,6 +3955,50 @@ public class ToolBox {
             return INDEX_NOT_FOUND;
         }
 
+        /**
+         * <p>Search a CharSequence to find the first index of any character of a precompiled set.</p>
+         *
+         * <p>A {@code null} CharSequence or matcher will return {@code -1}. Unlike the {@code char...} variant,
+         * this costs O(length of cs) whatever the size of the set.</p>
+         *
+         * <pre>
+         * StringTools.indexOfAny(null, *)                             = -1
+         * StringTools.indexOfAny("", *)                               = -1
+         * StringTools.indexOfAny(*, null)                             = -1
+         * StringTools.indexOfAny("zzabyycdxx", CharMatcher.of("by"))  = 3
+         * StringTools.indexOfAny("aba", CharMatcher.of("z"))          = -1
+         * </pre>
+         *
+         * @param cs      the CharSequence to check, may be null
+         * @param matcher the characters to search for, may be null
+         * @return the index of any of the characters, -1 if no match or null input
+         */
+        public static int indexOfAny(final CharSequence cs, final CharMatcher matcher) {
+            if (isEmpty(cs) || matcher == null) {
+                return INDEX_NOT_FOUND;
+            }
+            return matcher.indexIn(cs, true);
+        }
+
+        /**
+         * <p>Search a CharSequence to find the first index of any of a precompiled set of keywords, in one pass over
+         * it. Of keywords starting at the same index, the longest wins.</p>
+         *
+         * <pre>
+         * StringTools.indexOfAny(null, *)                                                 = -1
+         * StringTools.indexOfAny(*, null)                                                 = -1
+         * StringTools.indexOfAny("zzabyycdxx", KeywordMatcher.compile(false, "cd", "by")) = 3
+         * StringTools.indexOfAny("zzabyycdxx", KeywordMatcher.compile(true, "CD"))        = 6
+         * </pre>
+         *
+         * @param cs       the CharSequence to check, may be null
+         * @param keywords the keywords to search for, may be null
+         * @return the index of the first keyword found, -1 if no match or null input
+         */
+        public static int indexOfAny(final CharSequence cs, final KeywordMatcher keywords) {
+            return keywords == null ? INDEX_NOT_FOUND : keywords.indexIn(cs);
+        }
+
         /**
          * <p>Searches a CharSequence to find the first index of any
          * character not in the given set of characters.</p>
@@ -1513,13 +4073,15 @@ public class ToolBox {
             if (isEmpty(seq) || isEmpty(searchChars)) {
                 return INDEX_NOT_FOUND;
             }
+            // one pass over searchChars up front instead of one per char of seq
+            final CharMatcher searchSet = CharMatcher.ofUnits(searchChars);
             final int strLen = seq.length();
             for (int i = 0; i < strLen; i++) {
                 final char ch = seq.charAt(i);
-                final boolean chFound = CharSequenceTools.indexOf(searchChars, ch, 0) >= 0;
+                final boolean chFound = searchSet.matches(ch);
                 if (i + 1 < strLen && Character.isHighSurrogate(ch)) {
                     final char ch2 = seq.charAt(i + 1);
-                    if (chFound && CharSequenceTools.indexOf(searchChars, ch2, 0) < 0) {
+                    if (chFound && !searchSet.matches(ch2)) {
                         return i;
                     }
                 } else {
@@ -1531,6 +4093,32 @@ public class ToolBox {
             return INDEX_NOT_FOUND;
         }
 
+        /**
+         * <p>Search a CharSequence to find the first index of any character not in a precompiled set.</p>
+         *
+         * <p>A {@code null} CharSequence will return {@code -1}. A {@code null} or empty matcher will return
+         * {@code -1}, as an empty search string does. Unlike the {@code char...} variant, this costs O(length of cs)
+         * whatever the size of the set.</p>
+         *
+         * <pre>
+         * StringTools.indexOfAnyBut(null, *)                             = -1
+         * StringTools.indexOfAnyBut("", *)                               = -1
+         * StringTools.indexOfAnyBut(*, null)                             = -1
+         * StringTools.indexOfAnyBut("zzabyycdxx", CharMatcher.of("za"))  = 3
+         * StringTools.indexOfAnyBut("aba", CharMatcher.of("ab"))         = -1
+         * </pre>
+         *
+         * @param cs      the CharSequence to check, may be null
+         * @param matcher the characters to skip, may be null
+         * @return the index of the first other character, -1 if no match or null input
+         */
+        public static int indexOfAnyBut(final CharSequence cs, final CharMatcher matcher) {
+            if (isEmpty(cs) || matcher == null || matcher.isEmpty()) {
+                return INDEX_NOT_FOUND;
+            }
+            return matcher.indexIn(cs, false);
+        }
+
         /**
          * <p>Compares all CharSequences in an array and returns the index at which the
          * CharSequences begin to differ.</p>
@@ -0,0 +1,57 @@
+package comp5111.assignment.instrument;
+
+/**
+ * <p>The coverage criteria the instrumenter can measure.</p>
+ */
+public enum Criterion {
+    /**
+     * One probe per Jimple statement.
+     */
+    STATEMENT("statement"),
+    /**
+     * One probe per outgoing edge of every {@code if} and {@code switch} statement.
+     */
+    BRANCH("branch"),
+    /**
+     * One probe per source line.
+     */
+    LINE("line"),
+    /**
+     * One probe per pair of a definition of a local and a use it reaches.
+     */
+    DEF_USE("def-use");
+
+    private final String label;
+
+    Criterion(final String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the criterion as printed in reports
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Maps the coverage level given on the {@code Assignment1} command line to a criterion.
+     *
+     * @param level {@code "0"}, {@code "1"}, {@code "2"} or {@code "3"}
+     * @return the criterion, {@code null} for an unknown level
+     */
+    public static Criterion fromLevel(final String level) {
+        switch (level) {
+            case "0":
+                return STATEMENT;
+            case "1":
+                return BRANCH;
+            case "2":
+                return LINE;
+            case "3":
+                return DEF_USE;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package comp5111.assignment.instrument;
+
+import soot.SootClass;
+import soot.baf.BafASMBackend;
+import soot.options.Options;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * <p>Streams instrumented classes into a single compressed jar, together with the {@link ProbeTable} that describes
+ * their probes.</p>
+ *
+ * <p>Soot's own output writes one loose class file per class into {@code sootOutput}; for large targets that is
+ * thousands of small file creations. Here every class is generated into a reused in-memory buffer and appended
+ * to one jar, which the test runner can put on its class path as is.</p>
+ *
+ * <p>If the output does not end in {@code .jar}, it is a directory instead and every package gets a jar of its own
+ * in it, named after the package. Classes must then arrive package by package, so only one shard is open at a
+ * time. Sharded output keeps the probe table only in the file next to the directory.</p>
+ */
+public final class InstrumentedJarWriter implements Closeable {
+    /**
+     * Name of the jar entry holding the probe table.
+     */
+    public static final String PROBE_TABLE_ENTRY = "META-INF/comp5111/probes.bin";
+
+    private static final String PROBE_TABLE_SUFFIX = ".probes";
+    private static final String JAR_SUFFIX = ".jar";
+    // "default" is a keyword, so no real package shard can have this name
+    private static final String DEFAULT_PACKAGE_SHARD = "default";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File output;
+    private final boolean sharded;
+    private final Set<String> writtenShards = new HashSet<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    private JarOutputStream out;
+    private String shard;
+
+    /**
+     * Creates the output, replacing any existing jar or the shards of an earlier run.
+     *
+     * @param output the jar to write, or the directory to write one jar per package to
+     * @throws IOException if the output cannot be created
+     */
+    public InstrumentedJarWriter(final File output) throws IOException {
+        this.output = output;
+        this.sharded = isSharded(output);
+        if (sharded) {
+            mkdirs(output);
+            for (final File stale : outputJars(output)) {
+                if (!stale.delete()) {
+                    throw new IOException("Cannot delete " + stale);
+                }
+            }
+        } else {
+            mkdirs(output.getAbsoluteFile().getParentFile());
+            this.out = open(output);
+        }
+    }
+
+    private static void mkdirs(final File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+    }
+
+    private static JarOutputStream open(final File jar) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        return new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jar), BUFFER_SIZE), manifest);
+    }
+
+    /**
+     * Generates the bytecode of a class and appends it to the jar, or to the shard of its package.
+     *
+     * @param sootClass a class whose concrete methods all have active bodies
+     * @return the size of the class file in bytes
+     * @throws IOException if writing fails
+     * @throws IllegalStateException if the shard of the class was already finished
+     */
+    public int writeClass(final SootClass sootClass) throws IOException {
+        if (sharded) {
+            switchShard(sootClass.getPackageName());
+        }
+        buffer.reset();
+        new BafASMBackend(sootClass, Options.v().java_version()).generateClassFile(buffer);
+        out.putNextEntry(new JarEntry(sootClass.getName().replace('.', '/') + ".class"));
+        buffer.writeTo(out);
+        out.closeEntry();
+        return buffer.size();
+    }
+
+    private void switchShard(final String packageName) throws IOException {
+        final String name = packageName.isEmpty() ? DEFAULT_PACKAGE_SHARD : packageName;
+        if (name.equals(shard)) {
+            return;
+        }
+        if (!writtenShards.add(name)) {
+            throw new IllegalStateException("Classes of package " + name + " must be written together");
+        }
+        if (out != null) {
+            out.close();
+        }
+        out = open(new File(output, name + JAR_SUFFIX));
+        shard = name;
+    }
+
+    /**
+     * Appends the probe table to the jar. Does nothing for sharded output, whose table lives in
+     * {@link #probeTableFile(File)} only.
+     *
+     * @param table the probes of all classes written to the jar
+     * @throws IOException if writing fails
+     */
+    public void writeProbeTable(final ProbeTableBuilder table) throws IOException {
+        if (sharded) {
+            return;
+        }
+        out.putNextEntry(new JarEntry(PROBE_TABLE_ENTRY));
+        table.write(out);
+        out.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    private static boolean isSharded(final File output) {
+        return !output.getName().endsWith(JAR_SUFFIX);
+    }
+
+    /**
+     * Lists the jars making up an output: the jar itself, or the shards in the output directory.
+     *
+     * @param output the output given to the constructor
+     * @return the jars, shards in name order
+     */
+    public static List<File> outputJars(final File output) {
+        if (!isSharded(output)) {
+            return Collections.singletonList(output);
+        }
+        final File[] shards = output.listFiles((dir, name) -> name.endsWith(JAR_SUFFIX));
+        if (shards == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(shards);
+        return Arrays.asList(shards);
+    }
+
+    /**
+     * Returns the file the probe table of a jar is written to next to it, so reports can map it instead of reading
+     * it out of the jar.
+     *
+     * @param jar an instrumented jar, or a directory of shards
+     * @return the probe table file of the jar
+     */
+    public static File probeTableFile(final File jar) {
+        return new File(jar.getPath() + PROBE_TABLE_SUFFIX);
+    }
+
+    /**
+     * Opens the probe table of an instrumented jar, mapping the file next to the jar if there is one and reading
+     * the copy inside the jar otherwise.
+     *
+     * @param jar a jar or a directory of shards written by this class
+     * @return the probe table
+     * @throws IOException if the table cannot be read
+     */
+    public static ProbeTable openProbeTable(final File jar) throws IOException {
+        final File file = probeTableFile(jar);
+        if (file.isFile()) {
+            return ProbeTable.map(file);
+        }
+        if (isSharded(jar)) {
+            throw new IOException(file + " is missing");
+        }
+        try (JarFile jarFile = new JarFile(jar)) {
+            final JarEntry entry = jarFile.getJarEntry(PROBE_TABLE_ENTRY);
+            if (entry == null) {
+                throw new IOException(jar + " has no probe table");
+            }
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 0));
+                final byte[] chunk = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    bytes.write(chunk, 0, n);
+                }
+                return ProbeTable.wrap(bytes.toByteArray());
+            }
+        }
+    }
+}
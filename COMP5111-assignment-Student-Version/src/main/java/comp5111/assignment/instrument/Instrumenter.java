@@ -0,0 +1,185 @@
+package comp5111.assignment.instrument;
+
+import comp5111.assignment.ClassFiles;
+import comp5111.assignment.metrics.Phase;
+import comp5111.assignment.metrics.PipelineMetrics;
+import comp5111.assignment.runtime.Probes;
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.options.Options;
+import soot.tagkit.SourceFileTag;
+import soot.tagkit.Tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Offline instrumentation of classes under test with Soot.</p>
+ *
+ * <p>Classes are processed one at a time in name order, package by package: every concrete method body is built,
+ * probes are inserted and the class is written to the output right away. Going through the classes in a fixed order
+ * keeps probe ids stable between runs on the same input.</p>
+ *
+ * <p>Whole jars or class directories can be instrumented by passing them as process directories. To keep the heap
+ * from growing with the number of classes, the Jimple bodies of a class are released as soon as it is written;
+ * what stays are Soot's class signatures and the compact {@link ProbeTableBuilder}.</p>
+ *
+ * <p>Soot is kept to what instrumentation needs: no whole-program phases, and the JDK, JUnit and Soot itself are
+ * excluded, so they are resolved to signatures at most and never get bodies. Phantom references can then only come
+ * from the classes under test referring to something that is not on the class path.</p>
+ *
+ * <p>Instrumentation can be limited to the classes the tests load, as found by
+ * {@link comp5111.assignment.runner.LoadedClasses}. The other classes are only counted: they get totals and an empty
+ * range in the probe table, so reports list them with no coverage, and are not written, so tests that load them
+ * after all get the originals from the class path.</p>
+ *
+ * <p>Besides the probes, the probe table records the source file of each class and its size under every criterion,
+ * so reports can be made from the table and the execution data alone.</p>
+ */
+public final class Instrumenter {
+    private static final String SOURCE_FILE_TAG = "SourceFileTag";
+    private static final List<String> LIBRARY_PACKAGES = Arrays.asList(
+        "java.*", "javax.*", "jdk.*", "sun.*", "com.sun.*", "org.junit.*", "junit.*", "org.hamcrest.*", "soot.*");
+
+    private Instrumenter() {
+    }
+
+    /**
+     * Instruments the given classes and their nested classes, and every class in the given process directories.
+     *
+     * @param criterion   the coverage criterion to instrument for
+     * @param classPath   the class path holding the classes under test and the probe runtime
+     * @param classNames  the binary names of the top-level classes to instrument
+     * @param processDirs jars or directories whose classes are all instrumented
+     * @param jar         the jar, or directory of per-package jars, to write the instrumented classes to; the probe
+     *                    table is written next to it, see {@link InstrumentedJarWriter#probeTableFile(File)}
+     * @param metrics     where to record the time spent in each phase
+     * @return the number of probes
+     * @throws IOException if the class path cannot be read or the output cannot be written
+     */
+    public static int instrument(final Criterion criterion, final String classPath,
+                                        final List<String> classNames, final List<String> processDirs,
+                                        final File jar, final PipelineMetrics metrics) throws IOException {
+        return instrument(criterion, classPath, classNames, processDirs, null, jar, metrics);
+    }
+
+    /**
+     * Instruments the given classes as {@link #instrument(Criterion, String, List, List, File, PipelineMetrics)}
+     * does, but only those among them that tests load. The rest are counted for the probe table and left out.
+     *
+     * @param criterion   the coverage criterion to instrument for
+     * @param classPath   the class path holding the classes under test and the probe runtime
+     * @param classNames  the binary names of the top-level classes to instrument
+     * @param processDirs jars or directories whose classes are all instrumented
+     * @param loaded      the binary names of the classes to instrument, {@code null} for all of them
+     * @param jar         the jar, or directory of per-package jars, to write the instrumented classes to
+     * @param metrics     where to record the time spent in each phase
+     * @return the number of probes
+     * @throws IOException if the class path cannot be read or the output cannot be written
+     */
+    public static int instrument(final Criterion criterion, final String classPath,
+                                 final List<String> classNames, final List<String> processDirs,
+                                 final Set<String> loaded, final File jar, final PipelineMetrics metrics)
+        throws IOException {
+        final List<SootClass> classes = loadClasses(classPath, classNames, processDirs, metrics);
+        final ProbeTableBuilder table = new ProbeTableBuilder(criterion);
+        final ProbeInserter inserter = new ProbeInserter(criterion, table, hitRef());
+        try (InstrumentedJarWriter out = new InstrumentedJarWriter(jar)) {
+            for (final SootClass sootClass : classes) {
+                final String className = sootClass.getName();
+                final boolean instrumented = loaded == null || loaded.contains(className);
+                final int[] totals = new int[Criterion.values().length];
+                for (final SootMethod method : sootClass.getMethods()) {
+                    if (!method.isConcrete()) {
+                        continue;
+                    }
+                    final String signature = method.getSubSignature();
+                    final Body body;
+                    try (PipelineMetrics.Span span = metrics.start(Phase.BODY_BUILDING, className, signature)) {
+                        body = method.retrieveActiveBody();
+                    }
+                    if (!instrumented) {
+                        ProbeInserter.count(body, totals);
+                        continue;
+                    }
+                    try (PipelineMetrics.Span span = metrics.start(Phase.TRANSFORM, className, signature)) {
+                        ProbeInserter.count(body, totals);
+                        final int before = table.size();
+                        inserter.instrument(body);
+                        span.setProbes(table.size() - before);
+                    }
+                }
+                if (totals[Criterion.STATEMENT.ordinal()] > 0) {
+                    // classes without code, e.g. interfaces, are left out of the table
+                    table.finishClass(className, sourceFile(sootClass), totals);
+                }
+                if (instrumented) {
+                    try (PipelineMetrics.Span span = metrics.start(Phase.CLASS_WRITING, className, null)) {
+                        span.setBytes(out.writeClass(sootClass));
+                    }
+                }
+                for (final SootMethod method : sootClass.getMethods()) {
+                    if (method.hasActiveBody()) {
+                        method.releaseActiveBody();
+                    }
+                }
+            }
+            out.writeProbeTable(table);
+        }
+        table.write(InstrumentedJarWriter.probeTableFile(jar));
+        metrics.setProbes(table.size());
+        return table.size();
+    }
+
+    /**
+     * Resets Soot and loads the given classes, their nested classes and every class in the process directories.
+     *
+     * @return the loaded application classes, sorted by package and then by name
+     */
+    static List<SootClass> loadClasses(final String classPath, final List<String> classNames,
+                                       final List<String> processDirs, final PipelineMetrics metrics)
+        throws IOException {
+        G.reset();
+        Options.v().set_soot_classpath(classPath);
+        Options.v().set_process_dir(processDirs);
+        Options.v().set_prepend_classpath(true);
+        Options.v().set_whole_program(false);
+        Options.v().set_exclude(LIBRARY_PACKAGES);
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_keep_line_number(true);
+        Options.v().set_src_prec(Options.src_prec_class);
+        Options.v().set_output_format(Options.output_format_class);
+        Options.v().classes().addAll(ClassFiles.withNestedClasses(classPath, classNames));
+        Scene.v().addBasicClass(Probes.class.getName(), SootClass.SIGNATURES);
+        try (PipelineMetrics.Span span = metrics.start(Phase.CLASS_LOADING)) {
+            Scene.v().loadNecessaryClasses();
+        }
+
+        final List<SootClass> classes = new ArrayList<>(Scene.v().getApplicationClasses());
+        // package by package, so each shard of sharded output is written in one go
+        classes.sort(Comparator.comparing(SootClass::getPackageName).thenComparing(SootClass::getName));
+        return classes;
+    }
+
+    /**
+     * @return a reference to {@link Probes#hit(int)}, once the classes are loaded
+     */
+    static SootMethodRef hitRef() {
+        return Scene.v().getSootClass(Probes.class.getName()).getMethod("void hit(int)").makeRef();
+    }
+
+    static String sourceFile(final SootClass sootClass) {
+        final Tag tag = sootClass.getTag(SOURCE_FILE_TAG);
+        return tag instanceof SourceFileTag ? ((SourceFileTag) tag).getSourceFile() : null;
+    }
+}
@@ -0,0 +1,120 @@
+package comp5111.assignment.instrument;
+
+import soot.Body;
+import soot.IntType;
+import soot.Local;
+import soot.PatchingChain;
+import soot.SootFieldRef;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.LookupSwitchStmt;
+import soot.jimple.Stmt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Weaves every mutant of a body into it behind a run-time switch, so one compiled class holds all of them (mutant
+ * schemata). A statement with mutants becomes</p>
+ *
+ * <pre>
+ * Probes.hit(m1); Probes.hit(m2)
+ * $mutant = &lt;C: int $comp5111$mutant&gt;
+ * lookupswitch($mutant) { case m1 + 1: goto L1; case m2 + 1: goto L2; default: goto original }
+ * L1: mutant 1; goto next
+ * L2: mutant 2; goto next
+ * original: statement
+ * next: ...
+ * </pre>
+ *
+ * <p>where {@code m1} and {@code m2} are the mutant ids. The field is 0 unless a mutant of the class is selected.
+ * The probes tell which tests reach each mutant, so only those have to run against it. The mutated statements stay
+ * inside the trap ranges of the original, so they throw to the same handlers.</p>
+ */
+final class MutantInserter {
+    private final ProbeTableBuilder table;
+    private final SootMethodRef hit;
+
+    MutantInserter(final ProbeTableBuilder table, final SootMethodRef hit) {
+        this.table = table;
+        this.hit = hit;
+    }
+
+    /**
+     * @param body  the body to mutate
+     * @param field the selector field of the declaring class
+     */
+    void mutate(final Body body, final SootFieldRef field) {
+        final SootMethod method = body.getMethod();
+        final PatchingChain<Unit> units = body.getUnits();
+        final List<Unit> original = new ArrayList<>(units);
+        Local selector = null;
+        for (int i = 0; i < original.size(); i++) {
+            final Unit unit = original.get(i);
+            final List<Stmt> mutants = new ArrayList<>();
+            final List<MutationOperator> operators = new ArrayList<>();
+            for (final MutationOperator operator : MutationOperator.values()) {
+                final Stmt mutant = mutant(unit, operator);
+                if (mutant != null) {
+                    mutants.add(mutant);
+                    operators.add(operator);
+                }
+            }
+            if (mutants.isEmpty() || i + 1 == original.size()) {
+                continue;
+            }
+            if (selector == null) {
+                selector = Jimple.v().newLocal("$mutant", IntType.v());
+                body.getLocals().add(selector);
+            }
+
+            final List<IntConstant> values = new ArrayList<>(mutants.size());
+            final List<Unit> targets = new ArrayList<>(mutants.size());
+            for (int m = 0; m < mutants.size(); m++) {
+                final int id = table.add(method.getDeclaringClass().getName(), method.getSubSignature(),
+                    unit.getJavaSourceStartLineNumber(), operators.get(m).getLabel() + ": " + unit + " => "
+                        + mutants.get(m));
+                units.insertBefore(probe(id), unit);
+                values.add(IntConstant.v(id + 1));
+                targets.add(unit);
+            }
+            units.insertBefore(Jimple.v().newAssignStmt(selector, Jimple.v().newStaticFieldRef(field)), unit);
+            final LookupSwitchStmt lookup = Jimple.v().newLookupSwitchStmt(selector, values, targets, unit);
+            // redirects jumps to the statement onto the switch, the switch's own targets included
+            units.insertBefore(lookup, unit);
+            final Unit next = original.get(i + 1);
+            for (int m = 0; m < mutants.size(); m++) {
+                units.insertBeforeNoRedirect(mutants.get(m), unit);
+                units.insertBeforeNoRedirect(Jimple.v().newGotoStmt(next), unit);
+                lookup.setTarget(m, mutants.get(m));
+            }
+            lookup.setDefaultTarget(unit);
+        }
+    }
+
+    private static Stmt mutant(final Unit unit, final MutationOperator operator) {
+        if (unit instanceof IfStmt) {
+            final IfStmt ifStmt = (IfStmt) unit;
+            final Value condition = operator.mutate((ConditionExpr) ifStmt.getCondition());
+            return condition == null ? null : Jimple.v().newIfStmt(condition, ifStmt.getTarget());
+        }
+        if (unit instanceof AssignStmt && ((AssignStmt) unit).getRightOp() instanceof BinopExpr) {
+            final AssignStmt assign = (AssignStmt) unit;
+            final Value value = operator.mutate((BinopExpr) assign.getRightOp());
+            return value == null ? null : Jimple.v().newAssignStmt(assign.getLeftOp(), value);
+        }
+        return null;
+    }
+
+    private Stmt probe(final int id) {
+        return Jimple.v().newInvokeStmt(Jimple.v().newStaticInvokeExpr(hit, IntConstant.v(id)));
+    }
+}
@@ -0,0 +1,115 @@
+package comp5111.assignment.instrument;
+
+import soot.Value;
+import soot.jimple.AddExpr;
+import soot.jimple.BinopExpr;
+import soot.jimple.DivExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.Jimple;
+import soot.jimple.LeExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.MulExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.RemExpr;
+import soot.jimple.SubExpr;
+
+/**
+ * <p>The mutation operators of the {@link Mutator}. Each one turns a Jimple binary expression into a mutated copy,
+ * or declines if it does not apply.</p>
+ *
+ * <p>javac compiles {@code if (a < b) x} into "if a &gt;= b goto after", so the operators work on the Jimple
+ * conditions, which are often the negation of the source.</p>
+ */
+public enum MutationOperator {
+    /**
+     * Replaces a comparison by its negation, e.g. {@code <} by {@code >=}.
+     */
+    NEGATE_CONDITION("negate condition") {
+        @Override
+        Value mutate(final BinopExpr expr) {
+            final Value a = expr.getOp1();
+            final Value b = expr.getOp2();
+            final Jimple jimple = Jimple.v();
+            if (expr instanceof EqExpr) {
+                return jimple.newNeExpr(a, b);
+            } else if (expr instanceof NeExpr) {
+                return jimple.newEqExpr(a, b);
+            } else if (expr instanceof LtExpr) {
+                return jimple.newGeExpr(a, b);
+            } else if (expr instanceof GeExpr) {
+                return jimple.newLtExpr(a, b);
+            } else if (expr instanceof GtExpr) {
+                return jimple.newLeExpr(a, b);
+            } else if (expr instanceof LeExpr) {
+                return jimple.newGtExpr(a, b);
+            }
+            return null;
+        }
+    },
+    /**
+     * Moves the boundary of a relational comparison, e.g. {@code <} to {@code <=}.
+     */
+    CONDITIONAL_BOUNDARY("conditional boundary") {
+        @Override
+        Value mutate(final BinopExpr expr) {
+            final Value a = expr.getOp1();
+            final Value b = expr.getOp2();
+            final Jimple jimple = Jimple.v();
+            if (expr instanceof LtExpr) {
+                return jimple.newLeExpr(a, b);
+            } else if (expr instanceof LeExpr) {
+                return jimple.newLtExpr(a, b);
+            } else if (expr instanceof GtExpr) {
+                return jimple.newGeExpr(a, b);
+            } else if (expr instanceof GeExpr) {
+                return jimple.newGtExpr(a, b);
+            }
+            return null;
+        }
+    },
+    /**
+     * Swaps an arithmetic operator: {@code +} and {@code -}, {@code *} and {@code /}, {@code %} to {@code *}.
+     */
+    MATH("math") {
+        @Override
+        Value mutate(final BinopExpr expr) {
+            final Value a = expr.getOp1();
+            final Value b = expr.getOp2();
+            final Jimple jimple = Jimple.v();
+            if (expr instanceof AddExpr) {
+                return jimple.newSubExpr(a, b);
+            } else if (expr instanceof SubExpr) {
+                return jimple.newAddExpr(a, b);
+            } else if (expr instanceof MulExpr) {
+                return jimple.newDivExpr(a, b);
+            } else if (expr instanceof DivExpr) {
+                return jimple.newMulExpr(a, b);
+            } else if (expr instanceof RemExpr) {
+                return jimple.newMulExpr(a, b);
+            }
+            return null;
+        }
+    };
+
+    private final String label;
+
+    MutationOperator(final String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the operator as printed in reports
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param expr a binary expression of an {@code if} condition or the right side of an assignment; its operands
+     *             are immediates, so the mutant may share them
+     * @return the mutated expression, {@code null} if the operator does not apply
+     */
+    abstract Value mutate(BinopExpr expr);
+}
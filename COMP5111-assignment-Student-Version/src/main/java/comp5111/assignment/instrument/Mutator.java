@@ -0,0 +1,84 @@
+package comp5111.assignment.instrument;
+
+import comp5111.assignment.metrics.PipelineMetrics;
+import soot.Body;
+import soot.IntType;
+import soot.Modifier;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>Compiles the mutants of the classes under test into the classes themselves, with Soot.</p>
+ *
+ * <p>Every mutable statement of every concrete method gets all its mutants behind a switch on a static field of its
+ * class, see {@link MutantInserter}; a run selects one mutant by setting {@link #MUTANT_FIELD} to the mutant id plus
+ * one. Nothing is compiled per mutant, and a class loader per run keeps concurrent runs of different mutants apart.
+ * Static initializers run once per loader before a mutant can be selected, so they are not mutated; neither are
+ * interfaces, which cannot have the field.</p>
+ *
+ * <p>The mutants are described by a {@link ProbeTable} with one id per mutant, written next to the jar like the probe
+ * table of the {@link Instrumenter}: class, method, line and "operator: original =&gt; mutant". Probe {@code m} is
+ * hit whenever control reaches mutant {@code m}, so the same ids give the per-test reach of each mutant.</p>
+ */
+public final class Mutator {
+    /**
+     * The static {@code int} field of every mutated class that selects the active mutant; 0 runs the original code.
+     */
+    public static final String MUTANT_FIELD = "$comp5111$mutant";
+
+    private static final String STATIC_INITIALIZER = "<clinit>";
+
+    private Mutator() {
+    }
+
+    /**
+     * Mutates the given classes and their nested classes, and every class in the given process directories.
+     *
+     * @param classPath   the class path holding the classes under test and the probe runtime
+     * @param classNames  the binary names of the top-level classes to mutate
+     * @param processDirs jars or directories whose classes are all mutated
+     * @param jar         the jar, or directory of per-package jars, to write the mutated classes to
+     * @param metrics     where to record the time spent in each phase
+     * @return the number of mutants
+     * @throws IOException if the class path cannot be read or the output cannot be written
+     */
+    public static int mutate(final String classPath, final List<String> classNames, final List<String> processDirs,
+                             final File jar, final PipelineMetrics metrics) throws IOException {
+        final List<SootClass> classes = Instrumenter.loadClasses(classPath, classNames, processDirs, metrics);
+        // the mutation points are statements; each id is one mutant
+        final ProbeTableBuilder table = new ProbeTableBuilder(Criterion.STATEMENT);
+        final MutantInserter inserter = new MutantInserter(table, Instrumenter.hitRef());
+        try (InstrumentedJarWriter out = new InstrumentedJarWriter(jar)) {
+            for (final SootClass sootClass : classes) {
+                final SootField field = sootClass.isInterface() ? null
+                    : new SootField(MUTANT_FIELD, IntType.v(), Modifier.PUBLIC | Modifier.STATIC | Modifier.SYNTHETIC);
+                if (field != null) {
+                    sootClass.addField(field);
+                }
+                for (final SootMethod method : sootClass.getMethods()) {
+                    if (!method.isConcrete()) {
+                        continue;
+                    }
+                    final Body body = method.retrieveActiveBody();
+                    if (field != null && !STATIC_INITIALIZER.equals(method.getName())) {
+                        inserter.mutate(body, field.makeRef());
+                    }
+                }
+                out.writeClass(sootClass);
+                for (final SootMethod method : sootClass.getMethods()) {
+                    if (method.hasActiveBody()) {
+                        method.releaseActiveBody();
+                    }
+                }
+            }
+            out.writeProbeTable(table);
+        }
+        table.write(InstrumentedJarWriter.probeTableFile(jar));
+        return table.size();
+    }
+}
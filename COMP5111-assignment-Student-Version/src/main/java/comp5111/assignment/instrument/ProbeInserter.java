@@ -0,0 +1,410 @@
+package comp5111.assignment.instrument;
+
+import soot.Body;
+import soot.IntType;
+import soot.Local;
+import soot.PatchingChain;
+import soot.RefType;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.LookupSwitchStmt;
+import soot.jimple.Stmt;
+import soot.jimple.SwitchStmt;
+import soot.jimple.TableSwitchStmt;
+import soot.jimple.ThisRef;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.SimpleLocalDefs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Inserts calls to {@link comp5111.assignment.runtime.Probes#hit(int)} into Jimple bodies and records what each
+ * probe stands for in a {@link ProbeTableBuilder}.</p>
+ *
+ * <ul>
+ *  <li><b>Statement</b> - a probe before every statement. Identity statements must stay at the top of the body
+ *      (or of their handler), so their probes go right after the last of them. Statements that may throw an
+ *      exception, according to Soot's {@link ExceptionalUnitGraph}, also get a completion probe that fires only
+ *      when they do not: the probe of the next statement if that can only be entered from them, else an auxiliary
+ *      probe right after them. No trap handlers are added, so the bodies keep their shape for the JIT.</li>
+ *  <li><b>Branch</b> - a probe on every edge leaving an {@code if} or {@code switch}. The fall-through edge of an
+ *      {@code if} gets its probe right after the {@code if}; every jump edge is redirected to a small
+ *      "probe; goto target" block appended to the body, so other jumps to the same target are not counted.</li>
+ *  <li><b>Line</b> - one probe id per source line, hit wherever control can enter the line.</li>
+ *  <li><b>Def-use</b> - a probe for every pair of a definition of a local and a use it reaches, according to
+ *      Soot's reaching definitions over the {@link ExceptionalUnitGraph}. A use that only one definition reaches
+ *      gets a plain probe in front of it. Only locals with a use that several definitions reach are tracked at run
+ *      time: such a local gets an {@code int} shadow local that each of its definitions sets to its own number, and
+ *      a {@code lookupswitch} on the shadow in front of the use jumps to the probe of the pair. The number of probes
+ *      is the number of pairs, not the product of definitions and uses. Soot's stack temporaries and {@code this}
+ *      are left out.</li>
+ * </ul>
+ */
+final class ProbeInserter {
+    private final Criterion criterion;
+    private final ProbeTableBuilder table;
+    private final SootMethodRef hit;
+    private final RefType exception;
+
+    ProbeInserter(final Criterion criterion, final ProbeTableBuilder table, final SootMethodRef hit) {
+        this.criterion = criterion;
+        this.table = table;
+        this.hit = hit;
+        this.exception = RefType.v("java.lang.Exception");
+    }
+
+    void instrument(final Body body) {
+        switch (criterion) {
+            case STATEMENT:
+                instrumentStatements(body);
+                break;
+            case BRANCH:
+                instrumentBranches(body);
+                break;
+            case LINE:
+                instrumentLines(body);
+                break;
+            case DEF_USE:
+                instrumentDefUses(body);
+                break;
+            default:
+                throw new IllegalStateException("Unknown criterion " + criterion);
+        }
+    }
+
+    /**
+     * Adds the number of probes each criterion would insert into a body to the totals of its class. Must be called
+     * before the body is instrumented.
+     *
+     * @param body   an uninstrumented body
+     * @param totals per-class counters, indexed by {@link Criterion} ordinal
+     */
+    static void count(final Body body, final int[] totals) {
+        final Set<Integer> lines = new HashSet<>();
+        final LocalDefs defs = new SimpleLocalDefs(new ExceptionalUnitGraph(body));
+        final Local self = thisLocal(body);
+        for (final Unit unit : body.getUnits()) {
+            totals[Criterion.STATEMENT.ordinal()]++;
+            if (unit instanceof IfStmt) {
+                totals[Criterion.BRANCH.ordinal()] += 2;
+            } else if (unit instanceof SwitchStmt) {
+                totals[Criterion.BRANCH.ordinal()] += ((SwitchStmt) unit).getTargets().size() + 1;
+            }
+            final int line = unit.getJavaSourceStartLineNumber();
+            if (line >= 0 && !(unit instanceof IdentityStmt)) {
+                lines.add(line);
+            }
+            for (final Local local : usedLocals(unit, self)) {
+                totals[Criterion.DEF_USE.ordinal()] += defs.getDefsOfAt(local, unit).size();
+            }
+        }
+        totals[Criterion.LINE.ordinal()] += lines.size();
+    }
+
+    private void instrumentStatements(final Body body) {
+        final SootMethod method = body.getMethod();
+        final PatchingChain<Unit> units = body.getUnits();
+        final List<Unit> original = new ArrayList<>(units);
+        final ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body);
+        List<Unit> pending = new ArrayList<>();
+        int completes = -1;
+        for (int i = 0; i < original.size(); i++) {
+            final Unit unit = original.get(i);
+            final int id = addProbe(method, unit.getJavaSourceStartLineNumber(), unit.toString());
+            if (completes >= 0) {
+                table.setCompletion(completes, id);
+                completes = -1;
+            }
+            if (unit instanceof IdentityStmt) {
+                pending.add(probe(id));
+                if (i + 1 == original.size() || !(original.get(i + 1) instanceof IdentityStmt)) {
+                    units.insertAfter(pending, unit);
+                    pending = new ArrayList<>();
+                }
+                continue;
+            }
+            // redirects jumps to the statement onto its probe
+            units.insertBefore(probe(id), unit);
+            if (unit.fallsThrough() && mayThrow(graph, unit)) {
+                final Unit next = i + 1 < original.size() ? original.get(i + 1) : null;
+                if (next != null && !(next instanceof IdentityStmt)
+                    && graph.getUnexceptionalPredsOf(next).equals(Collections.singletonList(unit))) {
+                    // the probe of the next statement can only be reached through this one
+                    completes = id;
+                } else {
+                    units.insertAfter(probe(table.addCompletion(id)), unit);
+                }
+            }
+        }
+    }
+
+    private boolean mayThrow(final ExceptionalUnitGraph graph, final Unit unit) {
+        for (final ExceptionalUnitGraph.ExceptionDest dest : graph.getExceptionDests(unit)) {
+            // errors such as StackOverflowError may come from anywhere; they do not make a statement throwing
+            if (dest.getThrowables().catchableAs(exception)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void instrumentBranches(final Body body) {
+        final SootMethod method = body.getMethod();
+        final PatchingChain<Unit> units = body.getUnits();
+        for (final Unit unit : new ArrayList<>(units)) {
+            final int line = unit.getJavaSourceStartLineNumber();
+            if (unit instanceof IfStmt) {
+                final IfStmt ifStmt = (IfStmt) unit;
+                final String text = ifStmt.toString();
+                final int taken = addProbe(method, line, text + " [true]");
+                final int notTaken = addProbe(method, line, text + " [false]");
+                ifStmt.setTarget(trampoline(units, taken, ifStmt.getTarget()));
+                units.insertAfter(probe(notTaken), ifStmt);
+            } else if (unit instanceof SwitchStmt) {
+                final SwitchStmt switchStmt = (SwitchStmt) unit;
+                final String text = switchStmt.toString();
+                final List<Unit> targets = new ArrayList<>(switchStmt.getTargets());
+                for (int i = 0; i < targets.size(); i++) {
+                    final int id = addProbe(method, line, text + " [case " + caseValue(switchStmt, i) + "]");
+                    switchStmt.setTarget(i, trampoline(units, id, targets.get(i)));
+                }
+                final int id = addProbe(method, line, text + " [default]");
+                switchStmt.setDefaultTarget(trampoline(units, id, switchStmt.getDefaultTarget()));
+            }
+        }
+    }
+
+    private void instrumentLines(final Body body) {
+        final SootMethod method = body.getMethod();
+        final PatchingChain<Unit> units = body.getUnits();
+        final List<Unit> original = new ArrayList<>(units);
+        final Map<Integer, Integer> lineProbes = new HashMap<>();
+        for (int i = 0; i < original.size(); i++) {
+            final Unit unit = original.get(i);
+            final int line = unit.getJavaSourceStartLineNumber();
+            if (line < 0 || unit instanceof IdentityStmt) {
+                continue;
+            }
+            Integer id = lineProbes.get(line);
+            if (id == null) {
+                id = addProbe(method, line, "line " + line);
+                lineProbes.put(line, id);
+            }
+            // a probe is only needed where control can enter the line other than from the line itself
+            final Unit previous = i == 0 ? null : original.get(i - 1);
+            if (previous == null
+                || previous instanceof IdentityStmt
+                || previous.getJavaSourceStartLineNumber() != line
+                || !previous.fallsThrough()
+                || !unit.getBoxesPointingToThis().isEmpty()) {
+                units.insertBefore(probe(id), unit);
+            }
+        }
+    }
+
+    private void instrumentDefUses(final Body body) {
+        final SootMethod method = body.getMethod();
+        final PatchingChain<Unit> units = body.getUnits();
+        final List<Unit> original = new ArrayList<>(units);
+        final LocalDefs defs = new SimpleLocalDefs(new ExceptionalUnitGraph(body));
+        final Local self = thisLocal(body);
+
+        // shadow locals for the locals that need run-time tracking, and the number of each of their definitions
+        final Map<Local, Local> shadows = new LinkedHashMap<>();
+        for (final Unit unit : original) {
+            for (final Local local : usedLocals(unit, self)) {
+                if (!shadows.containsKey(local) && defs.getDefsOfAt(local, unit).size() > 1) {
+                    final Local shadow = Jimple.v().newLocal("$def_" + local.getName(), IntType.v());
+                    body.getLocals().add(shadow);
+                    shadows.put(local, shadow);
+                }
+            }
+        }
+        final Map<Unit, Integer> defNumbers = new HashMap<>();
+        final Map<Local, Integer> defCounts = new HashMap<>();
+        for (final Unit unit : original) {
+            final Local local = definedLocal(unit);
+            if (local != null && shadows.containsKey(local)) {
+                final int number = defCounts.merge(local, 1, Integer::sum);
+                defNumbers.put(unit, number);
+            }
+        }
+
+        int leading = 0;
+        while (leading < original.size() && original.get(leading) instanceof IdentityStmt) {
+            leading++;
+        }
+        final Unit lastIdentity = leading == 0 ? null : original.get(leading - 1);
+
+        List<Unit> pending = new ArrayList<>();
+        for (int i = 0; i < original.size(); i++) {
+            final Unit unit = original.get(i);
+            final Local defined = definedLocal(unit);
+            final Unit setShadow = defNumbers.containsKey(unit)
+                ? Jimple.v().newAssignStmt(shadows.get(defined), IntConstant.v(defNumbers.get(unit)))
+                : null;
+            if (unit instanceof IdentityStmt) {
+                if (setShadow != null) {
+                    pending.add(setShadow);
+                }
+                if (!pending.isEmpty()
+                    && (i + 1 == original.size() || !(original.get(i + 1) instanceof IdentityStmt))) {
+                    units.insertAfter(pending, unit);
+                    pending = new ArrayList<>();
+                }
+                continue;
+            }
+            for (final Local local : usedLocals(unit, self)) {
+                final List<Unit> reaching = new ArrayList<>(defs.getDefsOfAt(local, unit));
+                if (reaching.size() == 1) {
+                    units.insertBefore(probe(addPair(method, local, reaching.get(0), unit)), unit);
+                } else if (reaching.size() > 1) {
+                    reaching.sort(Comparator.comparing(defNumbers::get));
+                    insertPairSwitch(units, shadows.get(local), reaching, defNumbers,
+                        addPairs(method, local, reaching, unit), unit);
+                }
+            }
+            if (setShadow != null) {
+                units.insertAfter(setShadow, unit);
+            }
+        }
+
+        // every shadow starts out as "no definition yet", so it is assigned on all paths before it is read; going in
+        // last puts it ahead of the shadows set for parameters
+        final List<Unit> init = new ArrayList<>(shadows.size());
+        for (final Local shadow : shadows.values()) {
+            init.add(Jimple.v().newAssignStmt(shadow, IntConstant.v(0)));
+        }
+        if (init.isEmpty()) {
+            return;
+        }
+        if (lastIdentity != null) {
+            units.insertAfter(init, lastIdentity);
+        } else {
+            for (int i = init.size() - 1; i >= 0; i--) {
+                units.addFirst(init.get(i));
+            }
+        }
+    }
+
+    private int addPair(final SootMethod method, final Local local, final Unit def, final Unit use) {
+        return addProbe(method, use.getJavaSourceStartLineNumber(), local.getName() + ": " + def + " (line "
+            + def.getJavaSourceStartLineNumber() + ") -> " + use);
+    }
+
+    private int[] addPairs(final SootMethod method, final Local local, final List<Unit> reaching, final Unit use) {
+        final int[] ids = new int[reaching.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = addPair(method, local, reaching.get(i), use);
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts "lookupswitch(shadow) { case n: probe; goto use }" in front of a use, with one case per definition
+     * that reaches it.
+     */
+    private void insertPairSwitch(final PatchingChain<Unit> units, final Local shadow, final List<Unit> reaching,
+                                  final Map<Unit, Integer> defNumbers, final int[] ids, final Unit use) {
+        final List<IntConstant> values = new ArrayList<>(reaching.size());
+        final List<Unit> targets = new ArrayList<>(reaching.size());
+        for (final Unit def : reaching) {
+            values.add(IntConstant.v(defNumbers.get(def)));
+            targets.add(use);
+        }
+        final LookupSwitchStmt lookup = Jimple.v().newLookupSwitchStmt(shadow, values, targets, use);
+        // redirects jumps to the use onto the switch, the switch's own targets included, so they are set after
+        units.insertBefore(lookup, use);
+        for (int i = 0; i < ids.length; i++) {
+            lookup.setTarget(i, trampoline(units, ids[i], use));
+        }
+        lookup.setDefaultTarget(use);
+    }
+
+    /**
+     * @return the locals a statement reads, without duplicates, stack temporaries and {@code this}
+     */
+    private static Set<Local> usedLocals(final Unit unit, final Local self) {
+        final Set<Local> locals = new LinkedHashSet<>();
+        for (final ValueBox box : unit.getUseBoxes()) {
+            final Value value = box.getValue();
+            if (value instanceof Local && value != self && isSourceLocal((Local) value)) {
+                locals.add((Local) value);
+            }
+        }
+        return locals;
+    }
+
+    private static Local definedLocal(final Unit unit) {
+        if (unit instanceof DefinitionStmt) {
+            final Value left = ((DefinitionStmt) unit).getLeftOp();
+            if (left instanceof Local && isSourceLocal((Local) left)) {
+                return (Local) left;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSourceLocal(final Local local) {
+        // Soot names the locals it introduces for the operand stack with a leading '$'
+        return !local.getName().startsWith("$");
+    }
+
+    private static Local thisLocal(final Body body) {
+        for (final Unit unit : body.getUnits()) {
+            if (!(unit instanceof IdentityStmt)) {
+                break;
+            }
+            final IdentityStmt identity = (IdentityStmt) unit;
+            if (identity.getRightOp() instanceof ThisRef) {
+                return (Local) identity.getLeftOp();
+            }
+        }
+        return null;
+    }
+
+    private int addProbe(final SootMethod method, final int line, final String text) {
+        return table.add(method.getDeclaringClass().getName(), method.getSubSignature(), line, text);
+    }
+
+    private Stmt probe(final int id) {
+        return Jimple.v().newInvokeStmt(Jimple.v().newStaticInvokeExpr(hit, IntConstant.v(id)));
+    }
+
+    /**
+     * Appends "probe; goto target" to the end of the body, outside of every trap range.
+     *
+     * @return the first statement of the appended block
+     */
+    private Stmt trampoline(final PatchingChain<Unit> units, final int id, final Unit target) {
+        final Stmt probe = probe(id);
+        units.addLast(probe);
+        units.addLast(Jimple.v().newGotoStmt(target));
+        return probe;
+    }
+
+    private static String caseValue(final SwitchStmt switchStmt, final int index) {
+        if (switchStmt instanceof LookupSwitchStmt) {
+            return String.valueOf(((LookupSwitchStmt) switchStmt).getLookupValue(index));
+        }
+        return String.valueOf(((TableSwitchStmt) switchStmt).getLowIndex() + index);
+    }
+}
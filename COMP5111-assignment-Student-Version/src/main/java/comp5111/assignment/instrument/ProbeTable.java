@@ -0,0 +1,275 @@
+package comp5111.assignment.instrument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>What each probe id stands for: the class and method it was placed in, its source line and the Jimple text of
+ * the statement (or branch) it records.</p>
+ *
+ * <p>The table is a read-only view over the binary form written by {@link ProbeTableBuilder}: a pool of UTF-8
+ * strings plus one {@code int} column per attribute, indexed by probe id. Nothing is decoded up front; strings are
+ * only turned into {@link String}s when asked for, so mapping the table from disk costs no heap no matter how many
+ * probes it holds.</p>
+ *
+ * <p>The probes of a class form one contiguous range of ids. The ranges are listed in id order, so per-class
+ * figures can be computed without grouping probes by class. Each range also records the source file of the class
+ * and its size under every criterion, which is all a report needs; nothing has to be loaded back into Soot.</p>
+ *
+ * <pre>
+ * int     magic
+ * int     criterion ordinal
+ * int     probe count (n)
+ * int     string count (s)
+ * int     class count (c)
+ * int[s+1] byte offset of each string in the pool, plus the end of the pool
+ * int[c]  class name string of each class range
+ * int[c+1] first probe id of each class range, plus the probe count
+ * int[c]  source file string of each class range, -1 if unknown
+ * int[c]  statements of each class range
+ * int[c]  branches of each class range
+ * int[c]  lines of each class range
+ * int[c]  def-use pairs of each class range
+ * int[n]  class name string of each probe
+ * int[n]  method sub-signature string of each probe
+ * int[n]  source line of each probe, -1 if unknown
+ * int[n]  Jimple text string of each probe
+ * int[n]  completion probe of each probe, -1 if none; -2 - p for an auxiliary probe completing probe p
+ * byte[]  string pool
+ * </pre>
+ */
+public final class ProbeTable {
+    static final int MAGIC = 0x50524235; // "PRB5"
+
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final Criterion criterion;
+    private final int size;
+    private final int stringCount;
+    private final int classCount;
+    private final int offsetsStart;
+    private final int rangeClassesStart;
+    private final int rangeStartsStart;
+    private final int rangeSourcesStart;
+    private final int rangeTotalsStart;
+    private final int classesStart;
+    private final int methodsStart;
+    private final int linesStart;
+    private final int textsStart;
+    private final int completionsStart;
+    private final int poolStart;
+
+    private ProbeTable(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a probe table");
+        }
+        this.criterion = Criterion.values()[buffer.getInt(4)];
+        this.size = buffer.getInt(8);
+        this.stringCount = buffer.getInt(12);
+        this.classCount = buffer.getInt(16);
+        this.offsetsStart = HEADER_SIZE;
+        this.rangeClassesStart = offsetsStart + (stringCount + 1) * Integer.BYTES;
+        this.rangeStartsStart = rangeClassesStart + classCount * Integer.BYTES;
+        this.rangeSourcesStart = rangeStartsStart + (classCount + 1) * Integer.BYTES;
+        this.rangeTotalsStart = rangeSourcesStart + classCount * Integer.BYTES;
+        this.classesStart = rangeTotalsStart + Criterion.values().length * classCount * Integer.BYTES;
+        this.methodsStart = classesStart + size * Integer.BYTES;
+        this.linesStart = methodsStart + size * Integer.BYTES;
+        this.textsStart = linesStart + size * Integer.BYTES;
+        this.completionsStart = textsStart + size * Integer.BYTES;
+        this.poolStart = completionsStart + size * Integer.BYTES;
+        if (poolStart + buffer.getInt(offsetsStart + stringCount * Integer.BYTES) > buffer.limit()) {
+            throw new IOException("Truncated probe table");
+        }
+    }
+
+    /**
+     * Maps a table file into memory.
+     *
+     * @param file a file written by {@link ProbeTableBuilder#write(File)}
+     * @return the table
+     * @throws IOException if the file cannot be mapped or does not hold a probe table
+     */
+    public static ProbeTable map(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return new ProbeTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Wraps a table that has already been read into memory.
+     *
+     * @param bytes the bytes written by {@link ProbeTableBuilder}
+     * @return the table
+     * @throws IOException if the bytes do not hold a probe table
+     */
+    public static ProbeTable wrap(final byte[] bytes) throws IOException {
+        return new ProbeTable(ByteBuffer.wrap(bytes));
+    }
+
+    public Criterion getCriterion() {
+        return criterion;
+    }
+
+    /**
+     * @return the number of probes, i.e. one more than the highest probe id
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct strings in the pool
+     */
+    public int getStringCount() {
+        return stringCount;
+    }
+
+    /**
+     * @return the number of instrumented classes, including those without probes, which have an empty range
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @param index the index of a class range, below {@link #getClassCount()}; ranges are in probe id order
+     * @return the index of the class name in the string pool
+     */
+    public int getRangeClassRef(final int index) {
+        return range(rangeClassesStart, index);
+    }
+
+    /**
+     * @param index the index of a class range
+     * @return the first probe id of the class
+     */
+    public int getRangeStart(final int index) {
+        return range(rangeStartsStart, index);
+    }
+
+    /**
+     * @param index the index of a class range
+     * @return one more than the last probe id of the class
+     */
+    public int getRangeEnd(final int index) {
+        return range(rangeStartsStart + Integer.BYTES, index);
+    }
+
+    /**
+     * @param index the index of a class range
+     * @return the name of the source file of the class, {@code null} if unknown
+     */
+    public String getRangeSourceFile(final int index) {
+        final int ref = range(rangeSourcesStart, index);
+        return ref < 0 ? null : getString(ref);
+    }
+
+    /**
+     * Returns the size of a class under a criterion, i.e. the number of probes instrumenting the class for that
+     * criterion would give.
+     *
+     * @param index     the index of a class range
+     * @param criterion the criterion
+     * @return the number of statements, branches or lines of the class
+     */
+    public int getRangeTotal(final int index, final Criterion criterion) {
+        return range(rangeTotalsStart + criterion.ordinal() * classCount * Integer.BYTES, index);
+    }
+
+    /**
+     * @param id the probe id
+     * @return the index of the class name in the string pool; equal classes have equal indexes
+     */
+    public int getClassRef(final int id) {
+        return column(classesStart, id);
+    }
+
+    public String getClassName(final int id) {
+        return getString(getClassRef(id));
+    }
+
+    /**
+     * @param id the probe id
+     * @return the index of the method sub-signature in the string pool
+     */
+    public int getMethodRef(final int id) {
+        return column(methodsStart, id);
+    }
+
+    public String getMethodSignature(final int id) {
+        return getString(getMethodRef(id));
+    }
+
+    public int getLine(final int id) {
+        return column(linesStart, id);
+    }
+
+    public String getText(final int id) {
+        return getString(column(textsStart, id));
+    }
+
+    /**
+     * Checks whether a probe is auxiliary, i.e. only records that the statement of another probe completed. Auxiliary
+     * probes are not coverage items and should not be counted or listed as such.
+     *
+     * @param id the probe id
+     * @return {@code true} if the probe is auxiliary
+     */
+    public boolean isAuxiliary(final int id) {
+        return column(completionsStart, id) <= -2;
+    }
+
+    /**
+     * Returns the probe that is reached when the statement of a probe completes without throwing. A statement that
+     * was reached but whose completion probe was not is one that an exception interrupted.
+     *
+     * @param id the probe id
+     * @return the completion probe, -1 if the statement cannot throw or completion is not tracked
+     */
+    public int getCompletion(final int id) {
+        final int completion = column(completionsStart, id);
+        return completion < 0 ? -1 : completion;
+    }
+
+    /**
+     * Decodes a string of the pool.
+     *
+     * @param ref the index of the string, as returned by e.g. {@link #getClassRef(int)}
+     * @return the string
+     */
+    public String getString(final int ref) {
+        if (ref < 0 || ref >= stringCount) {
+            throw new IndexOutOfBoundsException("String " + ref + " of " + stringCount);
+        }
+        final int start = buffer.getInt(offsetsStart + ref * Integer.BYTES);
+        final int end = buffer.getInt(offsetsStart + (ref + 1) * Integer.BYTES);
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(poolStart + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int range(final int columnStart, final int index) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("Class range " + index + " of " + classCount);
+        }
+        return buffer.getInt(columnStart + index * Integer.BYTES);
+    }
+
+    private int column(final int columnStart, final int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Probe " + id + " of " + size);
+        }
+        return buffer.getInt(columnStart + id * Integer.BYTES);
+    }
+}
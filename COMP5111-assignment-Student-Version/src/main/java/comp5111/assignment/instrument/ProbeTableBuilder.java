@@ -0,0 +1,257 @@
+package comp5111.assignment.instrument;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Collects probes during instrumentation and writes them in the format read by {@link ProbeTable}.</p>
+ *
+ * <p>Class names and method signatures repeat for every probe of a method, so they are interned and stored once.
+ * Jimple texts are mostly unique; their UTF-8 bytes go straight into the pool without being kept as {@link String}s.
+ * Everything else lives in primitive arrays, so the builder holds roughly the size of the file it will write.</p>
+ *
+ * <p>Probe ids are 32-bit and handed out per class: a class registers when its first probe is added and owns the
+ * range of ids up to the first probe of the next class. The probes of a class must therefore be added together,
+ * which the instrumenter does by finishing one class before starting the next.</p>
+ *
+ * <p>Each range also carries the source file of its class and how many statements, branches and lines the class
+ * has, so reports can show totals for every criterion without loading the class again. A class that has totals
+ * but no probes for the instrumented criterion gets an empty range.</p>
+ */
+public final class ProbeTableBuilder {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Criterion criterion;
+    private final Map<String, Integer> interned = new HashMap<>();
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream(INITIAL_CAPACITY * 32);
+    private int[] stringOffsets = new int[INITIAL_CAPACITY];
+    private int stringCount;
+
+    private int[] classes = new int[INITIAL_CAPACITY];
+    private int[] methods = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] texts = new int[INITIAL_CAPACITY];
+    private int[] completions = new int[INITIAL_CAPACITY];
+    private boolean[] auxiliary = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    private final BitSet registered = new BitSet();
+    private int[] rangeClasses = new int[INITIAL_CAPACITY / 16];
+    private int[] rangeStarts = new int[INITIAL_CAPACITY / 16 + 1];
+    private int[] rangeSources = new int[INITIAL_CAPACITY / 16];
+    // one column per criterion, in ordinal order
+    private final int[][] rangeTotals = new int[Criterion.values().length][INITIAL_CAPACITY / 16];
+    private int rangeCount;
+
+    public ProbeTableBuilder(final Criterion criterion) {
+        this.criterion = criterion;
+    }
+
+    public Criterion getCriterion() {
+        return criterion;
+    }
+
+    /**
+     * Allocates the next probe id.
+     *
+     * @param className       the binary name of the instrumented class
+     * @param methodSignature the sub-signature of the instrumented method
+     * @param line            the source line, -1 if unknown
+     * @param text            the Jimple text describing the probe
+     * @return the new probe id
+     * @throws IllegalStateException if probes of another class were added since the last probe of this class
+     */
+    public int add(final String className, final String methodSignature, final int line, final String text) {
+        final int classRef = intern(className);
+        if (rangeCount == 0 || rangeClasses[rangeCount - 1] != classRef) {
+            register(className, classRef);
+        }
+        return add(classRef, intern(methodSignature), line, append(text), false);
+    }
+
+    /**
+     * Allocates an auxiliary probe that records that the statement of another probe completed normally, i.e.
+     * without throwing. It belongs to the same class, method and line, and is not a coverage item of its own.
+     *
+     * @param probe the probe of a statement that may throw, which must be the last probe added
+     * @return the new probe id
+     */
+    public int addCompletion(final int probe) {
+        if (probe != size - 1) {
+            throw new IllegalStateException("Completion of probe " + probe + " must directly follow it");
+        }
+        final int id = add(classes[probe], methods[probe], lines[probe], texts[probe], true);
+        completions[id] = probe;
+        completions[probe] = id;
+        return id;
+    }
+
+    /**
+     * Records that a probe can only be reached after the statement of another probe completed normally, so it
+     * doubles as the completion probe of that statement.
+     *
+     * @param probe      the probe of a statement that may throw
+     * @param completion the probe reached when the statement completes normally
+     */
+    public void setCompletion(final int probe, final int completion) {
+        completions[probe] = completion;
+    }
+
+    private int add(final int classRef, final int methodRef, final int line, final int textRef,
+                    final boolean isAuxiliary) {
+        if (size == classes.length) {
+            final int capacity = size * 2;
+            classes = Arrays.copyOf(classes, capacity);
+            methods = Arrays.copyOf(methods, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            completions = Arrays.copyOf(completions, capacity);
+            auxiliary = Arrays.copyOf(auxiliary, capacity);
+        }
+        classes[size] = classRef;
+        methods[size] = methodRef;
+        lines[size] = line;
+        texts[size] = textRef;
+        completions[size] = -1;
+        auxiliary[size] = isAuxiliary;
+        final int id = size++;
+        // the start of the next range doubles as the end of the current one
+        rangeStarts[rangeCount] = size;
+        return id;
+    }
+
+    private void register(final String className, final int classRef) {
+        if (registered.get(classRef)) {
+            throw new IllegalStateException("Probes of " + className + " must be added together");
+        }
+        registered.set(classRef);
+        if (rangeCount == rangeClasses.length) {
+            rangeClasses = Arrays.copyOf(rangeClasses, rangeCount * 2);
+            rangeStarts = Arrays.copyOf(rangeStarts, rangeCount * 2 + 1);
+            rangeSources = Arrays.copyOf(rangeSources, rangeCount * 2);
+            for (int c = 0; c < rangeTotals.length; c++) {
+                rangeTotals[c] = Arrays.copyOf(rangeTotals[c], rangeCount * 2);
+            }
+        }
+        rangeClasses[rangeCount] = classRef;
+        rangeStarts[rangeCount] = size;
+        rangeSources[rangeCount] = -1;
+        rangeCount++;
+        // the range ends here until a probe is added to it, so a class without probes gets an empty range
+        rangeStarts[rangeCount] = size;
+    }
+
+    /**
+     * Records what a class consists of, once all its probes have been added.
+     *
+     * @param className  the binary name of the class
+     * @param sourceFile the name of the source file of the class, {@code null} if unknown
+     * @param totals     how many statements, branches and lines the class has, indexed by {@link Criterion} ordinal
+     * @throws IllegalStateException if probes of another class were added since the last probe of this class
+     */
+    public void finishClass(final String className, final String sourceFile, final int[] totals) {
+        final int classRef = intern(className);
+        if (rangeCount == 0 || rangeClasses[rangeCount - 1] != classRef) {
+            register(className, classRef);
+        }
+        final int index = rangeCount - 1;
+        rangeSources[index] = sourceFile == null ? -1 : intern(sourceFile);
+        for (int c = 0; c < rangeTotals.length; c++) {
+            rangeTotals[c][index] = totals[c];
+        }
+    }
+
+    /**
+     * @return the number of probes added so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of classes registered so far, including those with an empty range
+     */
+    public int getClassCount() {
+        return rangeCount;
+    }
+
+    private int intern(final String s) {
+        final Integer ref = interned.get(s);
+        if (ref != null) {
+            return ref;
+        }
+        final int newRef = append(s);
+        interned.put(s, newRef);
+        return newRef;
+    }
+
+    private int append(final String s) {
+        if (stringCount + 1 == stringOffsets.length) {
+            stringOffsets = Arrays.copyOf(stringOffsets, stringOffsets.length * 2);
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        pool.write(bytes, 0, bytes.length);
+        stringOffsets[stringCount + 1] = pool.size();
+        return stringCount++;
+    }
+
+    /**
+     * Writes the table to a file, replacing any existing one.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public void write(final File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes the table to a stream, which is left open.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(ProbeTable.MAGIC);
+        data.writeInt(criterion.ordinal());
+        data.writeInt(size);
+        data.writeInt(stringCount);
+        data.writeInt(rangeCount);
+        writeInts(data, stringOffsets, stringCount + 1);
+        writeInts(data, rangeClasses, rangeCount);
+        writeInts(data, rangeStarts, rangeCount + 1);
+        writeInts(data, rangeSources, rangeCount);
+        for (final int[] column : rangeTotals) {
+            writeInts(data, column, rangeCount);
+        }
+        writeInts(data, classes, size);
+        writeInts(data, methods, size);
+        writeInts(data, lines, size);
+        writeInts(data, texts, size);
+        for (int id = 0; id < size; id++) {
+            // an auxiliary probe is stored as -2 - the probe it completes
+            data.writeInt(auxiliary[id] ? -2 - completions[id] : completions[id]);
+        }
+        pool.writeTo(data);
+        data.flush();
+    }
+
+    private static void writeInts(final DataOutputStream out, final int[] values, final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+}
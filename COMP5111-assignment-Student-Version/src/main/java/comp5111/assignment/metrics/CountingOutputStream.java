@@ -0,0 +1,39 @@
+package comp5111.assignment.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Passes bytes on to another stream and counts them, so a {@link PipelineMetrics.Span} can record how much a
+ * phase wrote.</p>
+ */
+public final class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    /**
+     * @param out the stream to write to
+     */
+    public CountingOutputStream(final OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,57 @@
+package comp5111.assignment.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>Emits pipeline phases as Java Flight Recorder events.</p>
+ *
+ * <p>{@code jdk.jfr} only exists on JDK 8u262 and later, so this class is the only one referring to it and
+ * {@link PipelineMetrics} only loads it after checking that the API is there.</p>
+ */
+final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    /**
+     * Starts timing an event.
+     *
+     * @return the event, or {@code null} if no recording wants it
+     */
+    static Object begin(final Phase phase, final String className, final String method) {
+        final PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.phase = phase.getLabel();
+        event.className = className;
+        event.method = method;
+        event.begin();
+        return event;
+    }
+
+    static void commit(final Object event, final int probes) {
+        final PhaseEvent phaseEvent = (PhaseEvent) event;
+        phaseEvent.probes = probes;
+        phaseEvent.commit();
+    }
+
+    @Name("comp5111.Phase")
+    @Label("Coverage Pipeline Phase")
+    @Category("COMP5111")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Class")
+        String className;
+
+        @Label("Method")
+        String method;
+
+        @Label("Probes")
+        int probes;
+    }
+}
@@ -0,0 +1,48 @@
+package comp5111.assignment.metrics;
+
+/**
+ * <p>The phases of the coverage pipeline that are timed by {@link PipelineMetrics}.</p>
+ */
+public enum Phase {
+    /**
+     * Running the test suites against the original classes, to find the classes they load.
+     */
+    LOAD_RECORDING("load-recording"),
+    /**
+     * Soot resolving the classes under test and everything they reference.
+     */
+    CLASS_LOADING("soot-class-loading"),
+    /**
+     * Building the Jimple body of each method.
+     */
+    BODY_BUILDING("jimple-body-building"),
+    /**
+     * Inserting probes into each body.
+     */
+    TRANSFORM("transform"),
+    /**
+     * Generating bytecode and writing it to the instrumented jar.
+     */
+    CLASS_WRITING("class-writing"),
+    /**
+     * Running the test suites against the instrumented classes.
+     */
+    TEST_EXECUTION("test-execution"),
+    /**
+     * Printing the coverage reports.
+     */
+    REPORT("report");
+
+    private final String label;
+
+    Phase(final String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the phase in the JSON summary and in JFR events
+     */
+    public String getLabel() {
+        return label;
+    }
+}
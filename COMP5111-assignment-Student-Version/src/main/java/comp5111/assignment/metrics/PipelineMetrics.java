@@ -0,0 +1,333 @@
+package comp5111.assignment.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Timing and size metrics of one run of the coverage pipeline.</p>
+ *
+ * <p>Each piece of work is measured with a {@link Span}, tagged with the {@link Phase} it belongs to and, where it
+ * makes sense, the class and method it worked on:</p>
+ *
+ * <pre>
+ * try (PipelineMetrics.Span span = metrics.start(Phase.TRANSFORM, className, method)) {
+ *     ...
+ *     span.setProbes(added);
+ * }
+ * </pre>
+ *
+ * <p>Spans are summed per phase, per class and per method, together with the CPU time of the measuring thread, the
+ * number of probes and bytes written, and the highest heap usage seen at the end of a span. The metrics also note
+ * when the first class was written, which is what start-up work such as class loading delays most. The totals can
+ * be written as a JSON summary with {@link #writeJson(File)}. When the JVM supports Java Flight Recorder, every
+ * span is also emitted as a {@code comp5111.Phase} event, which a recording picks up if it enables that event.</p>
+ */
+public final class PipelineMetrics {
+    private static final boolean JFR = isJfrAvailable();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final long startNanos = System.nanoTime();
+    private final long startUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    private long firstClassNanos = -1;
+    private final Map<Phase, Stats> phases = new EnumMap<>(Phase.class);
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private String criterion;
+    private int probes;
+
+    public PipelineMetrics() {
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PipelineMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param criterion the label of the measured coverage criterion
+     */
+    public void setCriterion(final String criterion) {
+        this.criterion = criterion;
+    }
+
+    /**
+     * @param probes the total number of probes inserted
+     */
+    public void setProbes(final int probes) {
+        this.probes = probes;
+    }
+
+    /**
+     * Starts measuring work that is not tied to a class.
+     *
+     * @param phase the phase the work belongs to
+     * @return the running span
+     */
+    public Span start(final Phase phase) {
+        return new Span(phase, null, null);
+    }
+
+    /**
+     * Starts measuring work on a class or one of its methods.
+     *
+     * @param phase     the phase the work belongs to
+     * @param className the class worked on
+     * @param method    the method worked on, {@code null} for the class as a whole
+     * @return the running span
+     */
+    public Span start(final Phase phase, final String className, final String method) {
+        return new Span(phase, className, method);
+    }
+
+    private synchronized void record(final Span span, final long nanos, final long cpuNanos) {
+        if (span.phase == Phase.CLASS_WRITING && firstClassNanos < 0) {
+            firstClassNanos = System.nanoTime() - startNanos;
+        }
+        final Stats phase = phases.computeIfAbsent(span.phase, p -> new Stats());
+        phase.add(nanos, cpuNanos, span.probes, span.bytes);
+        final Runtime runtime = Runtime.getRuntime();
+        phase.maxHeapUsed = Math.max(phase.maxHeapUsed, runtime.totalMemory() - runtime.freeMemory());
+        if (span.className != null) {
+            final Stats clazz = phase.children.computeIfAbsent(span.className, c -> new Stats());
+            clazz.add(nanos, cpuNanos, span.probes, span.bytes);
+            if (span.method != null) {
+                clazz.children.computeIfAbsent(span.method, m -> new Stats()).add(nanos, cpuNanos, span.probes,
+                    span.bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the total time spent in a phase so far.
+     *
+     * @param phase the phase
+     * @return the time in nanoseconds
+     */
+    public synchronized long getNanos(final Phase phase) {
+        final Stats stats = phases.get(phase);
+        return stats == null ? 0 : stats.nanos;
+    }
+
+    /**
+     * Returns the CPU time spent in a phase so far, by the threads that measured it.
+     *
+     * @param phase the phase
+     * @return the time in nanoseconds, 0 if the JVM cannot measure thread CPU time
+     */
+    public synchronized long getCpuNanos(final Phase phase) {
+        final Stats stats = phases.get(phase);
+        return stats == null ? 0 : stats.cpuNanos;
+    }
+
+    /**
+     * Returns the number of bytes written in a phase so far.
+     *
+     * @param phase the phase
+     * @return the number of bytes
+     */
+    public synchronized long getBytes(final Phase phase) {
+        final Stats stats = phases.get(phase);
+        return stats == null ? 0 : stats.bytes;
+    }
+
+    /**
+     * @return the time from the creation of these metrics until the first class was written, in nanoseconds; -1 if
+     * no class has been written yet
+     */
+    public synchronized long getTimeToFirstClassNanos() {
+        return firstClassNanos;
+    }
+
+    /**
+     * @return how long the JVM had been running when these metrics were created, in milliseconds
+     */
+    public long getStartUptimeMillis() {
+        return startUptimeMillis;
+    }
+
+    /**
+     * Returns the highest heap usage of this JVM since the metrics were created, summed over the heap pools.
+     *
+     * @return the peak heap usage in bytes
+     */
+    public long getPeakHeapUsed() {
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Writes the JSON summary to a file, replacing any existing one.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public void writeJson(final File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeJson(out);
+        }
+    }
+
+    /**
+     * Writes the JSON summary.
+     *
+     * @param out the writer to write to, left open
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeJson(final Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"criterion\": " + quote(criterion) + ",\n");
+        out.write("  \"wallTimeMillis\": " + millis(System.nanoTime() - startNanos) + ",\n");
+        out.write("  \"probes\": " + probes + ",\n");
+        out.write("  \"jvmUptimeAtStartMillis\": " + startUptimeMillis + ",\n");
+        out.write("  \"timeToFirstClassMillis\": " + (firstClassNanos < 0 ? "null" : millis(firstClassNanos))
+            + ",\n");
+        out.write("  \"peakHeapUsedBytes\": " + getPeakHeapUsed() + ",\n");
+        out.write("  \"maxHeapBytes\": " + Runtime.getRuntime().maxMemory() + ",\n");
+        out.write("  \"phases\": [");
+        String separator = "\n";
+        for (final Map.Entry<Phase, Stats> phase : phases.entrySet()) {
+            final Stats stats = phase.getValue();
+            out.write(separator + "    {\"name\": " + quote(phase.getKey().getLabel()) + ", " + stats.fields()
+                + ", \"maxHeapUsedBytes\": " + stats.maxHeapUsed + ", \"classes\": [");
+            writeChildren(out, stats, "methods");
+            out.write("]}");
+            separator = ",\n";
+        }
+        out.write("\n  ]\n}\n");
+        out.flush();
+    }
+
+    private static void writeChildren(final Writer out, final Stats parent, final String grandChildren)
+        throws IOException {
+        String separator = "\n      ";
+        for (final Map.Entry<String, Stats> child : parent.children.entrySet()) {
+            final Stats stats = child.getValue();
+            out.write(separator + "{\"name\": " + quote(child.getKey()) + ", " + stats.fields());
+            if (grandChildren != null && !stats.children.isEmpty()) {
+                out.write(", \"" + grandChildren + "\": [");
+                writeChildren(out, stats, null);
+                out.write("]");
+            }
+            out.write("}");
+            separator = ",\n      ";
+        }
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+
+    private static String quote(final String s) {
+        if (s == null) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class Stats {
+        private final Map<String, Stats> children = new LinkedHashMap<>();
+        private int count;
+        private long nanos;
+        private long cpuNanos;
+        private long probes;
+        private long bytes;
+        private long maxHeapUsed;
+
+        void add(final long spanNanos, final long spanCpuNanos, final int spanProbes, final long spanBytes) {
+            count++;
+            nanos += spanNanos;
+            cpuNanos += spanCpuNanos;
+            probes += spanProbes;
+            bytes += spanBytes;
+        }
+
+        String fields() {
+            return "\"count\": " + count + ", \"millis\": " + millis(nanos) + ", \"cpuMillis\": " + millis(cpuNanos)
+                + ", \"probes\": " + probes + ", \"bytes\": " + bytes;
+        }
+    }
+
+    /**
+     * A piece of work being measured. Closing the span records it.
+     */
+    public final class Span implements AutoCloseable {
+        private final Phase phase;
+        private final String className;
+        private final String method;
+        private final Object event;
+        private final long start;
+        private final long cpuStart;
+        private int probes;
+        private long bytes;
+
+        private Span(final Phase phase, final String className, final String method) {
+            this.phase = phase;
+            this.className = className;
+            this.method = method;
+            this.event = JFR ? JfrEvents.begin(phase, className, method) : null;
+            this.cpuStart = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * @param probes the number of probes the work added
+         */
+        public void setProbes(final int probes) {
+            this.probes = probes;
+        }
+
+        /**
+         * @param bytes the number of bytes the work wrote
+         */
+        public void setBytes(final long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            record(this, System.nanoTime() - start, CPU_TIME ? THREADS.getCurrentThreadCpuTime() - cpuStart : 0);
+            if (event != null) {
+                JfrEvents.commit(event, probes);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package comp5111.assignment.report;
+
+import comp5111.assignment.instrument.Criterion;
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.runner.ExecutionData;
+import comp5111.assignment.runner.SuiteResult;
+import comp5111.assignment.runtime.Probes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * <p>Prints the coverage of one suite: every probe with a yes/no flag, followed by the coverage of each class.
+ * A statement that was reached but did not complete because it threw is flagged {@code interrupted}; it still
+ * counts as covered.</p>
+ *
+ * <p>If the suite recorded attribution, each probe line also names the test that reached the probe first, and the
+ * time in milliseconds after the start of the suite if timestamps were recorded. Each class line ends with the
+ * source file of the class and its number of statements, branches and lines, whatever criterion was measured.</p>
+ *
+ * <p>Everything comes from the probe table and the suite result, so reports can also be made later with
+ * {@link #main(String[])} from a probe table file and an execution data file. That needs neither Soot nor the
+ * classes under test on the class path.</p>
+ */
+public final class CoverageReport {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private CoverageReport() {
+    }
+
+    /**
+     * Prints the report of every suite in an execution data file.
+     *
+     * @param args the probe table file written next to the instrumented jar, and the execution data file
+     */
+    public static void main(final String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java " + CoverageReport.class.getName() + " <probe table> <execution data>");
+            System.exit(0);
+        }
+        try {
+            final ProbeTable table = ProbeTable.map(new File(args[0]));
+            for (final SuiteResult result : ExecutionData.read(new File(args[1]))) {
+                print(table, result, System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Report failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param table  the probes of the instrumented classes
+     * @param result the result of the suite
+     * @param out    the stream to print to
+     */
+    public static void print(final ProbeTable table, final SuiteResult result, final PrintStream out) {
+        final String criterion = table.getCriterion().getLabel();
+        out.println("=== " + criterion + " coverage of " + result.getTestClasses() + " ===");
+        out.printf("tests run: %d, failures: %d, ignored: %d%n",
+            result.getRunCount(), result.getFailureCount(), result.getIgnoreCount());
+        if (result.isPrioritized()) {
+            final int tests = result.getRunCount() + result.getSkippedCount();
+            out.printf("prioritized: skipped %d of %d tests (%.2f%%)%n", result.getSkippedCount(), tests,
+                tests == 0 ? 0.0 : 100.0 * result.getSkippedCount() / tests);
+        }
+
+        // one line per probe, class by class; the ranges come in id order
+        final int[] covered = new int[table.getClassCount()];
+        final int[] items = new int[table.getClassCount()];
+        for (int index = 0; index < table.getClassCount(); index++) {
+            final String className = table.getString(table.getRangeClassRef(index));
+            for (int id = table.getRangeStart(index); id < table.getRangeEnd(index); id++) {
+                if (table.isAuxiliary(id)) {
+                    continue;
+                }
+                items[index]++;
+                final boolean hit = result.isCovered(id);
+                out.printf("%s\t%s\t%d\t%s\t%s", className, table.getMethodSignature(id), table.getLine(id),
+                    table.getText(id), hit ? isInterrupted(table, result, id) ? "interrupted" : "yes" : "no");
+                if (result.hasAttribution()) {
+                    out.print("\t" + firstTest(result, id));
+                    if (result.hasTimestamps()) {
+                        final long time = result.getFirstTime(id);
+                        out.print(time < 0 ? "\t-" : String.format(Locale.ROOT, "\t%.3f", time / NANOS_PER_MILLI));
+                    }
+                }
+                out.println();
+                if (hit) {
+                    covered[index]++;
+                }
+            }
+            if (table.getRangeStart(index) == table.getRangeEnd(index)) {
+                // a class left uninstrumented because no test loads it: all of it is uncovered
+                items[index] = table.getRangeTotal(index, table.getCriterion());
+            }
+        }
+
+        out.println("--- " + criterion + " coverage per class ---");
+        int totalCovered = 0;
+        int totalItems = 0;
+        final int[] sizes = new int[Criterion.values().length];
+        for (int index = 0; index < table.getClassCount(); index++) {
+            printRatio(out, table.getString(table.getRangeClassRef(index)), covered[index], items[index]);
+            final String sourceFile = table.getRangeSourceFile(index);
+            out.print("\t" + (sourceFile == null ? "-" : sourceFile));
+            for (final Criterion c : Criterion.values()) {
+                final int size = table.getRangeTotal(index, c);
+                out.print("\t" + size + " " + c.getLabel());
+                sizes[c.ordinal()] += size;
+            }
+            out.println();
+            totalCovered += covered[index];
+            totalItems += items[index];
+        }
+        printRatio(out, "total", totalCovered, totalItems);
+        out.print("\t-");
+        for (final Criterion c : Criterion.values()) {
+            out.print("\t" + sizes[c.ordinal()] + " " + c.getLabel());
+        }
+        out.println();
+    }
+
+    private static boolean isInterrupted(final ProbeTable table, final SuiteResult result, final int id) {
+        final int completion = table.getCompletion(id);
+        return completion >= 0 && !result.isCovered(completion);
+    }
+
+    private static String firstTest(final SuiteResult result, final int id) {
+        final int test = result.getFirstTest(id);
+        if (test == Probes.UNCLAIMED) {
+            return "-";
+        }
+        if (test == Probes.NO_TEST) {
+            return "(outside tests)";
+        }
+        return result.getTestNames().get(test - 1);
+    }
+
+    private static void printRatio(final PrintStream out, final String name, final int covered, final int total) {
+        out.printf("%s\t%d/%d\t%.2f%%", name, covered, total, total == 0 ? 0.0 : 100.0 * covered / total);
+    }
+}
@@ -0,0 +1,57 @@
+package comp5111.assignment.report;
+
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.runner.MutantStatus;
+import comp5111.assignment.runner.MutationResult;
+
+import java.io.PrintStream;
+
+/**
+ * <p>Prints the mutation score of one suite: every mutant with its status and, if it was killed, the test that killed
+ * it, or if it could not be run, why, followed by the score of each class. The score is the share of mutants the
+ * suite detected, i.e. killed or timed out, out of all mutants of the class.</p>
+ */
+public final class MutationReport {
+    private MutationReport() {
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param table  the mutants, as written by the {@link comp5111.assignment.instrument.Mutator}
+     * @param result the result of the suite
+     * @param out    the stream to print to
+     */
+    public static void print(final ProbeTable table, final MutationResult result, final PrintStream out) {
+        out.println("=== mutation score of " + result.getSuiteRoot() + " ===");
+        for (final MutantStatus status : MutantStatus.values()) {
+            out.print((status.ordinal() == 0 ? "" : ", ") + status.getLabel() + ": " + result.count(status));
+        }
+        out.println();
+
+        for (int id = 0; id < table.size(); id++) {
+            final String killer = result.getKiller(id);
+            out.printf("%s\t%s\t%d\t%s\t%s\t%s%n", table.getClassName(id), table.getMethodSignature(id),
+                table.getLine(id), table.getText(id), result.getStatus(id).getLabel(), killer == null ? "-" : killer);
+        }
+
+        out.println("--- mutation score per class ---");
+        int totalDetected = 0;
+        for (int index = 0; index < table.getClassCount(); index++) {
+            int detected = 0;
+            for (int id = table.getRangeStart(index); id < table.getRangeEnd(index); id++) {
+                if (result.getStatus(id).isDetected()) {
+                    detected++;
+                }
+            }
+            printRatio(out, table.getString(table.getRangeClassRef(index)), detected,
+                table.getRangeEnd(index) - table.getRangeStart(index));
+            totalDetected += detected;
+        }
+        printRatio(out, "total", totalDetected, table.size());
+    }
+
+    private static void printRatio(final PrintStream out, final String name, final int detected, final int total) {
+        out.printf("%s\t%d/%d\t%.2f%%%n", name, detected, total, total == 0 ? 0.0 : 100.0 * detected / total);
+    }
+}
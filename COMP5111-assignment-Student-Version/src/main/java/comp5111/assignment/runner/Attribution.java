@@ -0,0 +1,32 @@
+package comp5111.assignment.runner;
+
+import java.util.Locale;
+
+/**
+ * <p>How much the runner records about the test that reached each probe first.</p>
+ */
+public enum Attribution {
+    /**
+     * Coverage only.
+     */
+    OFF,
+    /**
+     * The first test to reach each probe.
+     */
+    TEST,
+    /**
+     * The first test to reach each probe and when it did.
+     */
+    TIMED;
+
+    /**
+     * Parses the value of the {@code comp5111.attribution} setting.
+     *
+     * @param value {@code off}, {@code test} or {@code timed}, in any case
+     * @return the attribution mode
+     * @throws IllegalArgumentException for any other value
+     */
+    public static Attribution parse(final String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
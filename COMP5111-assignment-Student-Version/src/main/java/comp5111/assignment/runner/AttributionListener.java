@@ -0,0 +1,36 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Tells the probe runtime which test is running, so first hits can be attributed to it.</p>
+ *
+ * <p>Tests are numbered from 1 in the order they start; {@link #getTestNames()} maps the numbers back to test
+ * names.</p>
+ */
+final class AttributionListener extends RunListener {
+    private final List<String> testNames = new ArrayList<>();
+
+    @Override
+    public void testStarted(final Description description) {
+        testNames.add(description.getDisplayName());
+        Probes.setCurrentTest(testNames.size());
+    }
+
+    @Override
+    public void testFinished(final Description description) {
+        Probes.setCurrentTest(Probes.NO_TEST);
+    }
+
+    /**
+     * @return the names of the tests started so far; test index {@code i} is at position {@code i - 1}
+     */
+    List<String> getTestNames() {
+        return testNames;
+    }
+}
@@ -0,0 +1,59 @@
+package comp5111.assignment.runner;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * <p>A class loader that prefers its own class path over its parent's.</p>
+ *
+ * <p>The original, uninstrumented classes under test are usually on the application class path as well, so a
+ * regular parent-first loader would never pick up the instrumented copies. Classes that are only available from the
+ * parent, such as JUnit and the probe runtime, are still shared with it.</p>
+ */
+final class ChildFirstClassLoader extends URLClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    ChildFirstClassLoader(final URL[] urls, final ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null && !name.startsWith("java.")) {
+                try {
+                    c = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    // not ours, ask the parent
+                }
+            }
+            if (c == null) {
+                c = getParent().loadClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * @param name the binary name of a class
+     * @return whether the class has been loaded through this loader
+     */
+    boolean isLoaded(final String name) {
+        return findLoadedClass(name) != null;
+    }
+
+    /**
+     * Appends a class path entry, e.g. the root of the next suite to run.
+     *
+     * @param url the directory or jar to add
+     */
+    void addClassPath(final URL url) {
+        addURL(url);
+    }
+}
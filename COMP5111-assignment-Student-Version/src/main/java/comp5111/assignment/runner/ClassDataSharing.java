@@ -0,0 +1,141 @@
+package comp5111.assignment.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Application class data sharing (AppCDS) for the JVMs of the tool.</p>
+ *
+ * <p>Soot alone loads thousands of classes, which dominates short runs. An AppCDS archive holds those classes
+ * already parsed and verified, and the JVM maps it in at start-up instead. {@link #createArchive} records the classes
+ * of a training run: on JDK 13 and later as a dynamic archive written when the run exits, on JDK 10 to 12 as a class
+ * list that a second JVM dumps into an archive. JDK 8 and 9 have no open AppCDS, so there it is not supported.</p>
+ *
+ * <p>An archive is used by starting a JVM with {@code -XX:SharedArchiveFile=<archive>} and the same class path it
+ * was created with. The JVM only archives classes from jar files, so the tool and its libraries must be on the class
+ * path as jars, not as directories. JVMs started by the tool, such as the workers of a {@link WorkerPool}, inherit
+ * the option.</p>
+ */
+public final class ClassDataSharing {
+    private static final String ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+    private static final String SHARE_OPTION = "-Xshare:";
+    private static final int FIRST_SUPPORTED = 10;
+    private static final int FIRST_DYNAMIC = 13;
+
+    private ClassDataSharing() {
+    }
+
+    /**
+     * @return the class data sharing options this JVM was started with, to pass on to the JVMs it starts
+     */
+    public static List<String> inheritedOptions() {
+        final List<String> options = new ArrayList<>();
+        for (final String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(ARCHIVE_OPTION) || argument.startsWith(SHARE_OPTION)) {
+                options.add(argument);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @return whether this JDK can create archives of application classes
+     */
+    public static boolean isSupported() {
+        return javaVersion() >= FIRST_SUPPORTED;
+    }
+
+    /**
+     * Runs a training JVM and archives the classes it loads. The standard output of the run is only shown if it
+     * fails, since the JVM reports archiving errors there.
+     *
+     * @param archive    the archive to write
+     * @param classPath  the class path of the training run, which every JVM using the archive must share
+     * @param jvmOptions further options of the training run, e.g. system properties
+     * @param mainClass  the main class of the training run
+     * @param args       the arguments of the training run
+     * @throws IOException if this JDK does not support AppCDS or a JVM fails
+     */
+    public static void createArchive(final File archive, final String classPath, final List<String> jvmOptions,
+                                     final String mainClass, final List<String> args) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("AppCDS needs JDK " + FIRST_SUPPORTED + " or later, this is "
+                + System.getProperty("java.version"));
+        }
+        final File dir = archive.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        final List<String> training = new ArrayList<>();
+        training.add(java());
+        training.addAll(jvmOptions);
+        if (javaVersion() >= FIRST_DYNAMIC) {
+            training.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+            addMain(training, classPath, mainClass, args);
+            run(training);
+            return;
+        }
+
+        final File classList = File.createTempFile("comp5111", ".classlist");
+        try {
+            training.add("-Xshare:off");
+            training.add("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+            addMain(training, classPath, mainClass, args);
+            run(training);
+
+            final List<String> dump = new ArrayList<>();
+            dump.add(java());
+            dump.add("-Xshare:dump");
+            dump.add("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+            dump.add(ARCHIVE_OPTION + archive.getAbsolutePath());
+            dump.add("-cp");
+            dump.add(classPath);
+            run(dump);
+        } finally {
+            classList.delete();
+        }
+    }
+
+    private static void addMain(final List<String> command, final String classPath, final String mainClass,
+                                final List<String> args) {
+        command.add("-cp");
+        command.add(classPath);
+        command.add(mainClass);
+        command.addAll(args);
+    }
+
+    private static void run(final List<String> command) throws IOException {
+        final File output = File.createTempFile("comp5111", ".out");
+        try {
+            final Process process = new ProcessBuilder(command)
+                .redirectOutput(output)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            final int status = process.waitFor();
+            if (status != 0) {
+                Files.copy(output.toPath(), System.err);
+                throw new IOException("JVM exited with " + status + ": " + command);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating the archive", e);
+        } finally {
+            output.delete();
+        }
+    }
+
+    private static String java() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    private static int javaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        // "1.8" up to Java 8, "9", "10", ... after
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+}
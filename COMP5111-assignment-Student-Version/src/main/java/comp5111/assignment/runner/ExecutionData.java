@@ -0,0 +1,199 @@
+package comp5111.assignment.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Binary form of {@link SuiteResult}s, used for the execution data file and for results coming back from a
+ * {@link ForkedWorker}.</p>
+ *
+ * <p>Together with the probe table written at instrumentation time, the execution data file is all a report needs,
+ * so reports can be made later, on another machine, without Soot or the classes under test.</p>
+ *
+ * <pre>
+ * int     magic (file only)
+ * int     suite count (file only)
+ * per suite:
+ *   int, UTF[]  test classes
+ *   int, int, int  run, failure and ignore counts
+ *   int, long[] coverage bitset
+ *   byte    0 without attribution, 1 with first tests, 2 with first tests and times
+ *   int, UTF[]  test names (with attribution)
+ *   int, int[]  first test of each probe (with attribution)
+ *   long[]  first time of each probe, as many as first tests (with times)
+ *   int     tests skipped by prioritization, -1 if not prioritized
+ *   int     tests with their own coverage, -1 if not recorded
+ *   per test: UTF display name, int word count, long[] coverage bitset
+ * </pre>
+ */
+public final class ExecutionData {
+    static final int MAGIC = 0x45584532; // "EXE2"
+
+    private static final int NO_ATTRIBUTION = 0;
+    private static final int FIRST_TESTS = 1;
+    private static final int FIRST_TIMES = 2;
+
+    private ExecutionData() {
+    }
+
+    /**
+     * Writes results to a file, replacing any existing one.
+     *
+     * @param results the suite results
+     * @param file    the file to write
+     * @throws IOException if writing fails
+     */
+    public static void write(final List<SuiteResult> results, final File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(results.size());
+            for (final SuiteResult result : results) {
+                writeSuite(out, result);
+            }
+        }
+    }
+
+    /**
+     * Reads the results written by {@link #write(List, File)}.
+     *
+     * @param file the file to read
+     * @return the suite results, in the order they were written
+     * @throws IOException if the file cannot be read or does not hold execution data
+     */
+    public static List<SuiteResult> read(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " holds no execution data");
+            }
+            final int count = in.readInt();
+            final List<SuiteResult> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(readSuite(in));
+            }
+            return results;
+        }
+    }
+
+    static void writeSuite(final DataOutput out, final SuiteResult result) throws IOException {
+        writeStrings(out, result.getTestClasses());
+        out.writeInt(result.getRunCount());
+        out.writeInt(result.getFailureCount());
+        out.writeInt(result.getIgnoreCount());
+        final long[] coverage = result.getCoverage();
+        out.writeInt(coverage.length);
+        for (final long word : coverage) {
+            out.writeLong(word);
+        }
+        writeAttribution(out, result);
+        out.writeInt(result.getSkippedCount());
+        final Map<String, long[]> tests = result.getTestCoverage();
+        out.writeInt(tests == null ? -1 : tests.size());
+        if (tests != null) {
+            for (final Map.Entry<String, long[]> test : tests.entrySet()) {
+                out.writeUTF(test.getKey());
+                out.writeInt(test.getValue().length);
+                for (final long word : test.getValue()) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    private static void writeAttribution(final DataOutput out, final SuiteResult result) throws IOException {
+        if (!result.hasAttribution()) {
+            out.writeByte(NO_ATTRIBUTION);
+            return;
+        }
+        out.writeByte(result.hasTimestamps() ? FIRST_TIMES : FIRST_TESTS);
+        writeStrings(out, result.getTestNames());
+        final int[] firstTests = result.firstTests();
+        out.writeInt(firstTests.length);
+        for (final int test : firstTests) {
+            out.writeInt(test);
+        }
+        if (result.hasTimestamps()) {
+            for (final long time : result.firstTimes()) {
+                out.writeLong(time);
+            }
+        }
+    }
+
+    static SuiteResult readSuite(final DataInput in) throws IOException {
+        final List<String> testClasses = readStrings(in);
+        final int runCount = in.readInt();
+        final int failureCount = in.readInt();
+        final int ignoreCount = in.readInt();
+        final long[] coverage = new long[in.readInt()];
+        for (int i = 0; i < coverage.length; i++) {
+            coverage[i] = in.readLong();
+        }
+        final SuiteResult result = readAttribution(in, testClasses, runCount, failureCount, ignoreCount, coverage);
+        result.setSkippedCount(in.readInt());
+        final int testCount = in.readInt();
+        if (testCount >= 0) {
+            final Map<String, long[]> tests = new LinkedHashMap<>();
+            for (int t = 0; t < testCount; t++) {
+                final String test = in.readUTF();
+                final long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                tests.put(test, words);
+            }
+            result.setTestCoverage(tests);
+        }
+        return result;
+    }
+
+    private static SuiteResult readAttribution(final DataInput in, final List<String> testClasses, final int runCount,
+                                               final int failureCount, final int ignoreCount, final long[] coverage)
+        throws IOException {
+        final int attribution = in.readByte();
+        if (attribution == NO_ATTRIBUTION) {
+            return new SuiteResult(testClasses, runCount, failureCount, ignoreCount, coverage);
+        }
+
+        final List<String> testNames = readStrings(in);
+        final int[] firstTests = new int[in.readInt()];
+        for (int i = 0; i < firstTests.length; i++) {
+            firstTests[i] = in.readInt();
+        }
+        long[] firstTimes = null;
+        if (attribution == FIRST_TIMES) {
+            firstTimes = new long[firstTests.length];
+            for (int i = 0; i < firstTimes.length; i++) {
+                firstTimes[i] = in.readLong();
+            }
+        }
+        return new SuiteResult(testClasses, runCount, failureCount, ignoreCount, coverage, testNames, firstTests,
+            firstTimes);
+    }
+
+    private static void writeStrings(final DataOutput out, final List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (final String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static List<String> readStrings(final DataInput in) throws IOException {
+        final int count = in.readInt();
+        final List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+}
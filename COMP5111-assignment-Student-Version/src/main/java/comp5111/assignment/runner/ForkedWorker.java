@@ -0,0 +1,171 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.instrument.Mutator;
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Entry point of a worker JVM started by {@link WorkerPool}.</p>
+ *
+ * <p>The first argument is the instrumented jar (or directory of per-package jars), the second the number of probes
+ * in it. Before each suite the worker opens a fresh class loader over the jar and loads every class in it, so they
+ * are ready by the time the suite arrives. They are not initialized up front: static initializers carry probes too
+ * and must run while the suite is being measured. The worker then reports that it is ready and runs the suites it
+ * receives on standard input, one at a time. The root of each suite is added to the prepared loader, which keeps the
+ * tests in the same runtime package as the classes under test, and is thrown away afterwards so suites never see each
+ * other's classes or static state. A suite may come with a {@link Prioritization} plan, in which case the worker runs
+ * its tests in that order and stops at the target.</p>
+ *
+ * <p>Instead of a suite, the worker may receive one mutant of a {@link Mutator} jar and the tests that reach it. It
+ * selects the mutant and runs the tests one by one until one fails, then replies whether the mutant was killed, and by
+ * which test, or could not be run at all.</p>
+ *
+ * <p>After each suite the worker writes the {@link SuiteResult} back on standard output, in the form of
+ * {@link ExecutionData}.
+ * Anything the tests themselves print to {@code System.out} is redirected to {@code System.err} so it cannot
+ * corrupt the protocol.</p>
+ */
+public final class ForkedWorker {
+    static final int READY = 0x5111C0DE;
+    static final int CMD_EXIT = 0;
+    static final int CMD_RUN = 1;
+    static final int CMD_MUTANT = 2;
+    static final int MUTANT_SURVIVED = 0;
+    static final int MUTANT_KILLED = 1;
+    static final int MUTANT_ERROR = 2;
+
+    private ForkedWorker() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        System.setOut(System.err);
+
+        final File output = new File(args[0]);
+        final URL[] jars = TestRunner.outputUrls(output);
+        Probes.ensureCapacity(Integer.parseInt(args[1]));
+        final List<String> preloadClasses = TestRunner.outputClassNames(output);
+        ChildFirstClassLoader loader = prepareLoader(jars, preloadClasses);
+        out.writeInt(READY);
+        out.flush();
+
+        int command;
+        while ((command = readCommand(in)) != CMD_EXIT) {
+            loader.addClassPath(new File(in.readUTF()).toURI().toURL());
+            Thread.currentThread().setContextClassLoader(loader);
+            if (command == CMD_MUTANT) {
+                runMutant(in, out, loader);
+            } else {
+                runSuite(in, out, loader);
+            }
+            out.flush();
+
+            loader.close();
+            loader = prepareLoader(jars, preloadClasses);
+        }
+    }
+
+    private static void runSuite(final DataInputStream in, final DataOutputStream out,
+                                 final ChildFirstClassLoader loader) throws IOException {
+        final Attribution attribution = Attribution.values()[in.readInt()];
+        final boolean recordTests = in.readBoolean();
+        final Prioritization plan = in.readBoolean() ? Prioritization.read(in) : null;
+        final int count = in.readInt();
+        final List<String> names = new ArrayList<>(count);
+        final List<Class<?>> classes = new ArrayList<>(count);
+        int loadFailures = 0;
+        for (int i = 0; i < count; i++) {
+            final String className = in.readUTF();
+            names.add(className);
+            try {
+                classes.add(Class.forName(className, false, loader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Cannot load test class " + className + ": " + e);
+                loadFailures++;
+            }
+        }
+
+        final SuiteResult result = TestRunner.execute(classes, names, loadFailures, attribution, recordTests, plan);
+        ExecutionData.writeSuite(out, result);
+    }
+
+    /**
+     * Runs tests against one mutant until one fails and replies with the outcome.
+     */
+    private static void runMutant(final DataInputStream in, final DataOutputStream out,
+                                  final ChildFirstClassLoader loader) throws IOException {
+        final String className = in.readUTF();
+        final int mutant = in.readInt();
+        final int count = in.readInt();
+        final List<Description> tests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tests.add(Description.createTestDescription(in.readUTF(), in.readUTF()));
+        }
+
+        try {
+            // initializes the class with the original code, then selects the mutant
+            loader.loadClass(className).getField(Mutator.MUTANT_FIELD).setInt(null, mutant + 1);
+            final JUnitCore junit = new JUnitCore();
+            for (final Description test : tests) {
+                final Result result = junit.run(Request.aClass(loader.loadClass(test.getClassName()))
+                    .filterWith(test));
+                if (!result.wasSuccessful()) {
+                    reply(out, MUTANT_KILLED, test.getDisplayName());
+                    return;
+                }
+            }
+            out.writeInt(MUTANT_SURVIVED);
+        } catch (LinkageError e) {
+            // e.g. a static initializer that now fails, or a mutant the verifier rejects; the original code passed
+            reply(out, MUTANT_KILLED, "(" + e + ")");
+        } catch (ReflectiveOperationException e) {
+            // a class or the mutant field is missing, which says nothing about the mutant
+            reply(out, MUTANT_ERROR, e.toString());
+        }
+    }
+
+    private static void reply(final DataOutputStream out, final int outcome, final String detail)
+        throws IOException {
+        out.writeInt(outcome);
+        out.writeUTF(detail);
+    }
+
+    private static ChildFirstClassLoader prepareLoader(final URL[] jars, final List<String> preloadClasses) {
+        final ChildFirstClassLoader loader = new ChildFirstClassLoader(jars, ForkedWorker.class.getClassLoader());
+        for (final String className : preloadClasses) {
+            try {
+                Class.forName(className, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Cannot preload " + className + ": " + e);
+            }
+        }
+        return loader;
+    }
+
+    private static int readCommand(final DataInputStream in) throws IOException {
+        try {
+            return in.readInt();
+        } catch (EOFException e) {
+            // the pool went away without saying goodbye
+            return CMD_EXIT;
+        }
+    }
+}
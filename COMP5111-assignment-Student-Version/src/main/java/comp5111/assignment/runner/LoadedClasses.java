@@ -0,0 +1,112 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.ClassFiles;
+import org.junit.runner.JUnitCore;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>Finds out which classes under test the test suites actually load, so that only those need instrumenting.</p>
+ *
+ * <p>{@link #record} runs the suites once against the original classes. Every class path entry that holds a class
+ * under test goes into a child-first loader together with the suite, so each class under test the tests reach,
+ * directly or through other classes under test, is defined by that loader and can be asked for afterwards. Nothing
+ * is instrumented, so this pre-run costs about as much as the tests themselves.</p>
+ *
+ * <p>The result is kept in a text file with one class name per line, so later runs can reuse it. A class that the
+ * tests only start to load after the file was written stays uninstrumented until the file is deleted and recorded
+ * again.</p>
+ */
+public final class LoadedClasses {
+    private LoadedClasses() {
+    }
+
+    /**
+     * Runs every suite against the original classes and collects the classes under test that were loaded.
+     *
+     * @param suiteRoots the directories or jars holding the compiled test suites
+     * @param classPath  the class path holding the classes under test
+     * @param candidates the binary names of the classes under test
+     * @return the candidates that at least one suite loaded
+     * @throws IOException if the class path or a suite cannot be read
+     */
+    public static Set<String> record(final List<File> suiteRoots, final String classPath,
+                                     final Collection<String> candidates) throws IOException {
+        // only entries with classes under test; JUnit and the like must stay shared with this loader
+        final List<URL> entries = new ArrayList<>();
+        for (final String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty() && containsAny(new File(entry), candidates)) {
+                entries.add(new File(entry).toURI().toURL());
+            }
+        }
+
+        final Set<String> loaded = new TreeSet<>();
+        for (final File suiteRoot : suiteRoots) {
+            final URL[] urls = entries.toArray(new URL[entries.size() + 1]);
+            urls[entries.size()] = suiteRoot.toURI().toURL();
+            try (ChildFirstClassLoader loader = new ChildFirstClassLoader(urls, LoadedClasses.class.getClassLoader())) {
+                final List<Class<?>> tests = TestDiscovery.find(suiteRoot, loader);
+                final Thread thread = Thread.currentThread();
+                final ClassLoader contextLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(loader);
+                try {
+                    new JUnitCore().run(tests.toArray(new Class<?>[0]));
+                } finally {
+                    thread.setContextClassLoader(contextLoader);
+                }
+                for (final String candidate : candidates) {
+                    if (loader.isLoaded(candidate)) {
+                        loaded.add(candidate);
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static boolean containsAny(final File entry, final Collection<String> classNames) throws IOException {
+        for (final String name : ClassFiles.list(entry)) {
+            if (classNames.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads recorded class names.
+     *
+     * @param file the file written by {@link #write}
+     * @return the class names
+     * @throws IOException if the file cannot be read
+     */
+    public static Set<String> read(final File file) throws IOException {
+        final Set<String> names = new TreeSet<>();
+        for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                names.add(line.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Writes recorded class names, replacing any existing file.
+     *
+     * @param file  the file to write
+     * @param names the class names
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final File file, final Set<String> names) throws IOException {
+        Files.write(file.toPath(), names, StandardCharsets.UTF_8);
+    }
+}
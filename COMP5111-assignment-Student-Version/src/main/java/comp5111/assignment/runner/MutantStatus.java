@@ -0,0 +1,48 @@
+package comp5111.assignment.runner;
+
+/**
+ * <p>What became of a mutant.</p>
+ */
+public enum MutantStatus {
+    /**
+     * A test that passes on the original code failed with the mutant.
+     */
+    KILLED("killed"),
+    /**
+     * Every test that reaches the mutant still passed.
+     */
+    SURVIVED("survived"),
+    /**
+     * The tests did not finish in time, most likely because the mutant loops; counted as detected.
+     */
+    TIMED_OUT("timed out"),
+    /**
+     * No passing test reaches the mutant, so it was not run.
+     */
+    NO_COVERAGE("no coverage"),
+    /**
+     * The mutant could not be run, e.g. because a class or the mutant field was missing from the mutant jar; not
+     * counted as detected.
+     */
+    ERROR("error");
+
+    private final String label;
+
+    MutantStatus(final String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the status as printed in reports
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return whether the suite noticed the mutant
+     */
+    public boolean isDetected() {
+        return this == KILLED || this == TIMED_OUT;
+    }
+}
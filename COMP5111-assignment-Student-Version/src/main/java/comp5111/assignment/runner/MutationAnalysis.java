@@ -0,0 +1,185 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.instrument.InstrumentedJarWriter;
+import comp5111.assignment.instrument.Mutator;
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs a test suite against the mutants written by the {@link Mutator}.</p>
+ *
+ * <p>The suite first runs once against the original code, recording the coverage of each test. A mutant's own probe
+ * then tells which tests reach it, and only those run against it, fastest first, until one fails. Tests that fail on
+ * the original code are left out, since their failures say nothing about a mutant.</p>
+ *
+ * <p>Mutants run in parallel on a {@link WorkerPool} of forked JVMs. Each run gets a fresh class loader over the
+ * mutant jar, so every run has its own copy of the classes under test, their static state and their
+ * {@link Mutator#MUTANT_FIELD}. A run that takes much longer than its tests did on the original code is stopped by
+ * killing its worker, which is replaced, and counted as timed out; a mutant that makes its worker exit counts as
+ * killed. Neither can stall or end the analysis. Failures of the analysis itself, such as a class missing from the
+ * mutant jar, are reported as {@link MutantStatus#ERROR} rather than as kills.</p>
+ */
+public final class MutationAnalysis {
+    private static final long MIN_TIMEOUT_MILLIS = 2000;
+    private static final int TIMEOUT_FACTOR = 3;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private MutationAnalysis() {
+    }
+
+    /**
+     * Runs a suite against every mutant.
+     *
+     * @param mutantJar the jar, or directory of per-package jars, written by the {@link Mutator}
+     * @param suiteRoot the directory or jar holding the compiled suite
+     * @param threads   the number of mutants to run at the same time
+     * @return the status of each mutant
+     * @throws IOException if the suite or the mutants cannot be read
+     */
+    public static MutationResult run(final File mutantJar, final File suiteRoot, final int threads)
+        throws IOException {
+        final ProbeTable mutants = InstrumentedJarWriter.openProbeTable(mutantJar);
+        Probes.ensureCapacity(mutants.size());
+        final List<TestCase> tests = baseline(mutantJar, suiteRoot);
+        // so each mutant runs its fastest tests first
+        tests.sort(Comparator.comparingLong(test -> test.nanos));
+
+        final MutationResult result = new MutationResult(suiteRoot, mutants.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (WorkerPool pool = new WorkerPool(threads, System.getProperty("java.class.path"), mutantJar,
+            mutants.size())) {
+            final List<Future<?>> pending = new ArrayList<>();
+            for (int id = 0; id < mutants.size(); id++) {
+                final List<Description> reaching = new ArrayList<>();
+                long budgetNanos = 0;
+                for (final TestCase test : tests) {
+                    if (test.reaches(id)) {
+                        reaching.add(test.description);
+                        budgetNanos += test.nanos;
+                    }
+                }
+                if (reaching.isEmpty()) {
+                    result.set(id, MutantStatus.NO_COVERAGE, null);
+                    continue;
+                }
+                final long timeoutMillis = MIN_TIMEOUT_MILLIS + (long) (TIMEOUT_FACTOR * budgetNanos / NANOS_PER_MILLI);
+                final int mutant = id;
+                final String className = mutants.getClassName(id);
+                pending.add(executor.submit(() -> {
+                    pool.runMutant(suiteRoot, className, mutant, reaching, timeoutMillis, result);
+                    return null;
+                }));
+            }
+            for (final Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running mutants", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Mutant failed to run", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Runs the suite against the original code and returns its passing tests with their coverage.
+     */
+    private static List<TestCase> baseline(final File mutantJar, final File suiteRoot) throws IOException {
+        try (ChildFirstClassLoader loader = TestRunner.newLoader(mutantJar, suiteRoot)) {
+            final List<Class<?>> classes = TestDiscovery.find(suiteRoot, loader);
+            final JUnitCore junit = new JUnitCore();
+            final TestCoverageListener coverage = new TestCoverageListener();
+            final TimingListener timing = new TimingListener();
+            junit.addListener(coverage);
+            junit.addListener(timing);
+
+            final Thread thread = Thread.currentThread();
+            final ClassLoader contextLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(loader);
+            Probes.reset();
+            try {
+                junit.run(classes.toArray(new Class<?>[0]));
+            } finally {
+                thread.setContextClassLoader(contextLoader);
+            }
+
+            final List<TestCase> tests = new ArrayList<>();
+            for (final Map.Entry<String, long[]> test : coverage.getTests().entrySet()) {
+                final String name = test.getKey();
+                if (!timing.failed.contains(name)) {
+                    tests.add(new TestCase(timing.descriptions.get(name), test.getValue(), timing.nanos.get(name)));
+                }
+            }
+            return tests;
+        }
+    }
+
+    /**
+     * A test that passes on the original code.
+     */
+    private static final class TestCase {
+        private final Description description;
+        private final long[] coverage;
+        private final long nanos;
+
+        TestCase(final Description description, final long[] coverage, final long nanos) {
+            this.description = description;
+            this.coverage = coverage;
+            this.nanos = nanos;
+        }
+
+        boolean reaches(final int mutant) {
+            final int word = mutant >>> 6;
+            return word < coverage.length && (coverage[word] & 1L << mutant) != 0;
+        }
+    }
+
+    private static final class TimingListener extends RunListener {
+        private final Map<String, Description> descriptions = new HashMap<>();
+        private final Map<String, Long> nanos = new HashMap<>();
+        private final Set<String> failed = new HashSet<>();
+        private long start;
+
+        @Override
+        public void testStarted(final Description description) {
+            start = System.nanoTime();
+        }
+
+        @Override
+        public void testFinished(final Description description) {
+            descriptions.put(description.getDisplayName(), description);
+            nanos.put(description.getDisplayName(), System.nanoTime() - start);
+        }
+
+        @Override
+        public void testFailure(final Failure failure) {
+            failed.add(failure.getDescription().getDisplayName());
+        }
+
+        @Override
+        public void testAssumptionFailure(final Failure failure) {
+            failed.add(failure.getDescription().getDisplayName());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package comp5111.assignment.runner;
+
+import java.io.File;
+
+/**
+ * <p>Outcome of running one test suite against every mutant: the status of each mutant and, for killed ones, the
+ * test that killed it. Mutants are indexed by their id in the mutant table of the
+ * {@link comp5111.assignment.instrument.Mutator}.</p>
+ */
+public final class MutationResult {
+    private final File suiteRoot;
+    private final MutantStatus[] statuses;
+    private final String[] killers;
+
+    MutationResult(final File suiteRoot, final int mutants) {
+        this.suiteRoot = suiteRoot;
+        this.statuses = new MutantStatus[mutants];
+        this.killers = new String[mutants];
+    }
+
+    /**
+     * @return the directory or jar holding the suite
+     */
+    public File getSuiteRoot() {
+        return suiteRoot;
+    }
+
+    /**
+     * @return the number of mutants
+     */
+    public int size() {
+        return statuses.length;
+    }
+
+    /**
+     * @param mutant the mutant id
+     * @return what became of the mutant
+     */
+    public MutantStatus getStatus(final int mutant) {
+        return statuses[mutant];
+    }
+
+    /**
+     * @param mutant the mutant id
+     * @return the display name of the test that killed the mutant, or why it could not be run for
+     * {@link MutantStatus#ERROR}, {@code null} otherwise
+     */
+    public String getKiller(final int mutant) {
+        return killers[mutant];
+    }
+
+    /**
+     * @param status a status
+     * @return the number of mutants with that status
+     */
+    public int count(final MutantStatus status) {
+        int count = 0;
+        for (final MutantStatus s : statuses) {
+            if (s == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void set(final int mutant, final MutantStatus status, final String killer) {
+        statuses[mutant] = status;
+        killers[mutant] = killer;
+    }
+}
@@ -0,0 +1,141 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.instrument.ProbeTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Runs the tests of a suite in the order of the coverage they add, and stops as soon as the suite reaches a
+ * target coverage.</p>
+ *
+ * <p>The order is the greedy "additional coverage" order over the per-test coverage of earlier runs: each next
+ * test is the one that covers the most items the tests before it do not. Tests that add nothing follow in their
+ * recorded order, and tests without history run last. Whether the target is met is decided on the coverage actually
+ * reached, not on the history, so a stale history only costs speed.</p>
+ */
+public final class Prioritization {
+    private final List<String> order;
+    private final long[] items;
+    private final int needed;
+
+    private Prioritization(final List<String> order, final long[] items, final int needed) {
+        this.order = order;
+        this.items = items;
+        this.needed = needed;
+    }
+
+    /**
+     * Plans a prioritized run.
+     *
+     * @param tests   the coverage of each test from earlier runs, by display name
+     * @param table   the probes of the instrumented classes; auxiliary probes are not coverage items, while the
+     *                whole of a class with an empty range is
+     * @param percent the coverage to reach, in percent of the items of the instrumented criterion
+     * @return the plan
+     */
+    public static Prioritization plan(final Map<String, long[]> tests, final ProbeTable table, final double percent) {
+        final long[] items = new long[(table.size() + 63) >>> 6];
+        int itemCount = 0;
+        for (int id = 0; id < table.size(); id++) {
+            if (!table.isAuxiliary(id)) {
+                items[id >>> 6] |= 1L << id;
+                itemCount++;
+            }
+        }
+        for (int index = 0; index < table.getClassCount(); index++) {
+            if (table.getRangeStart(index) == table.getRangeEnd(index)) {
+                // a class left uninstrumented because no test loads it: the report counts all of it as uncovered
+                itemCount += table.getRangeTotal(index, table.getCriterion());
+            }
+        }
+        final int needed = (int) Math.ceil(itemCount * percent / 100.0);
+
+        final Map<String, long[]> remaining = new LinkedHashMap<>(tests);
+        final List<String> order = new ArrayList<>(tests.size());
+        long[] covered = new long[items.length];
+        while (!remaining.isEmpty()) {
+            String best = null;
+            int bestGain = 0;
+            for (final Map.Entry<String, long[]> test : remaining.entrySet()) {
+                final int gain = gain(test.getValue(), covered, items);
+                if (gain > bestGain) {
+                    best = test.getKey();
+                    bestGain = gain;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            order.add(best);
+            covered = TestCoverageListener.or(covered, remaining.remove(best));
+        }
+        order.addAll(remaining.keySet());
+        return new Prioritization(Collections.unmodifiableList(order), items, needed);
+    }
+
+    private static int gain(final long[] test, final long[] covered, final long[] items) {
+        int gain = 0;
+        for (int i = 0; i < Math.min(test.length, items.length); i++) {
+            gain += Long.bitCount(test[i] & ~covered[i] & items[i]);
+        }
+        return gain;
+    }
+
+    /**
+     * @return the display names of the tests with history, in the order to run them
+     */
+    public List<String> getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the number of coverage items the run has to reach
+     */
+    public int getNeeded() {
+        return needed;
+    }
+
+    /**
+     * @param coverage the probes reached so far
+     * @return whether the target coverage is reached
+     */
+    public boolean isMet(final long[] coverage) {
+        int covered = 0;
+        for (int i = 0; i < Math.min(coverage.length, items.length); i++) {
+            covered += Long.bitCount(coverage[i] & items[i]);
+        }
+        return covered >= needed;
+    }
+
+    void write(final DataOutput out) throws IOException {
+        out.writeInt(order.size());
+        for (final String test : order) {
+            out.writeUTF(test);
+        }
+        out.writeInt(items.length);
+        for (final long word : items) {
+            out.writeLong(word);
+        }
+        out.writeInt(needed);
+    }
+
+    static Prioritization read(final DataInput in) throws IOException {
+        final int count = in.readInt();
+        final List<String> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(in.readUTF());
+        }
+        final long[] items = new long[in.readInt()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = in.readLong();
+        }
+        return new Prioritization(Collections.unmodifiableList(order), items, in.readInt());
+    }
+}
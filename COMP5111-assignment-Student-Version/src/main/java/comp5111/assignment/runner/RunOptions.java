@@ -0,0 +1,33 @@
+package comp5111.assignment.runner;
+
+/**
+ * <p>What the {@link TestRunner} records besides coverage, and whether it may stop suites early.</p>
+ */
+public final class RunOptions {
+    private final Attribution attribution;
+    private final TestHistory history;
+    private final double target;
+
+    /**
+     * @param attribution what to record about the first test to reach each probe
+     * @param history     where to record and look up the coverage of each test, {@code null} for nowhere
+     * @param target      the coverage in percent at which a suite with history may stop, 0 to run whole suites
+     */
+    public RunOptions(final Attribution attribution, final TestHistory history, final double target) {
+        this.attribution = attribution;
+        this.history = history;
+        this.target = target;
+    }
+
+    public Attribution getAttribution() {
+        return attribution;
+    }
+
+    public TestHistory getHistory() {
+        return history;
+    }
+
+    public double getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,164 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.runtime.Probes;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Outcome of running one test suite: the JUnit counters and the probes the suite reached.</p>
+ *
+ * <p>If the suite ran with {@link Attribution} on, the result also knows which test reached each probe first,
+ * and possibly when. A {@link Prioritization prioritized} run also knows how many tests it skipped, and a run that
+ * recorded {@link TestHistory} carries the coverage of each test.</p>
+ */
+public final class SuiteResult {
+    private final List<String> testClasses;
+    private final int runCount;
+    private final int failureCount;
+    private final int ignoreCount;
+    private final long[] coverage;
+    private final List<String> testNames;
+    private final int[] firstTests;
+    private final long[] firstTimes;
+    // set by the runner before the result is handed out
+    private int skippedCount = -1;
+    private Map<String, long[]> testCoverage;
+
+    public SuiteResult(final List<String> testClasses, final int runCount, final int failureCount,
+                       final int ignoreCount, final long[] coverage) {
+        this(testClasses, runCount, failureCount, ignoreCount, coverage, Collections.<String>emptyList(), null,
+            null);
+    }
+
+    public SuiteResult(final List<String> testClasses, final int runCount, final int failureCount,
+                       final int ignoreCount, final long[] coverage, final List<String> testNames,
+                       final int[] firstTests, final long[] firstTimes) {
+        this.testClasses = testClasses;
+        this.runCount = runCount;
+        this.failureCount = failureCount;
+        this.ignoreCount = ignoreCount;
+        this.coverage = coverage;
+        this.testNames = testNames;
+        this.firstTests = firstTests;
+        this.firstTimes = firstTimes;
+    }
+
+    /**
+     * @return the names of the test classes that made up the suite
+     */
+    public List<String> getTestClasses() {
+        return testClasses;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public int getIgnoreCount() {
+        return ignoreCount;
+    }
+
+    /**
+     * @return the reached probes as a bitset, in the layout of {@link Probes#snapshot()}
+     */
+    public long[] getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Checks whether the given probe was reached by the suite.
+     *
+     * @param probe the probe id
+     * @return {@code true} if the probe was reached
+     */
+    public boolean isCovered(final int probe) {
+        final int word = probe >>> 6;
+        return word < coverage.length && (coverage[word] & 1L << probe) != 0;
+    }
+
+    /**
+     * @return whether the suite recorded the first test of each probe
+     */
+    public boolean hasAttribution() {
+        return firstTests != null;
+    }
+
+    /**
+     * @return whether the suite recorded when each probe was first reached
+     */
+    public boolean hasTimestamps() {
+        return firstTimes != null;
+    }
+
+    /**
+     * @return the names of the tests in the order they started, as used by {@link #getFirstTest(int)}
+     */
+    public List<String> getTestNames() {
+        return testNames;
+    }
+
+    /**
+     * Returns the test that reached a probe first.
+     *
+     * @param probe the probe id
+     * @return the index of the test, counting from 1, {@link Probes#NO_TEST} if it was reached outside of a test,
+     * or {@link Probes#UNCLAIMED} if it was not reached or attribution was off
+     */
+    public int getFirstTest(final int probe) {
+        return firstTests == null || probe >= firstTests.length ? Probes.UNCLAIMED : firstTests[probe];
+    }
+
+    int[] firstTests() {
+        return firstTests;
+    }
+
+    long[] firstTimes() {
+        return firstTimes;
+    }
+
+    /**
+     * Returns when a probe was first reached.
+     *
+     * @param probe the probe id
+     * @return nanoseconds since the suite started, -1 if unknown
+     */
+    public long getFirstTime(final int probe) {
+        return firstTimes == null || getFirstTest(probe) == Probes.UNCLAIMED ? -1 : firstTimes[probe];
+    }
+
+    /**
+     * @return whether the suite ran prioritized and could stop early
+     */
+    public boolean isPrioritized() {
+        return skippedCount >= 0;
+    }
+
+    /**
+     * @return the number of tests a prioritized run left out because the target coverage was reached, -1 if the run
+     * was not prioritized
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    void setSkippedCount(final int skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+
+    /**
+     * @return the coverage of each test that ran, by display name; {@code null} if not recorded
+     */
+    public Map<String, long[]> getTestCoverage() {
+        return testCoverage;
+    }
+
+    void setTestCoverage(final Map<String, long[]> testCoverage) {
+        this.testCoverage = testCoverage;
+    }
+}
@@ -0,0 +1,57 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Records the coverage of each test on its own, by draining the probes when a test starts and when it ends.</p>
+ *
+ * <p>Draining clears the probes, so the coverage of the whole suite has to be put back together from the drains;
+ * {@link #getCoverage()} does that, including what was reached outside of tests.</p>
+ */
+final class TestCoverageListener extends RunListener {
+    private final Map<String, long[]> tests = new LinkedHashMap<>();
+    private long[] coverage = new long[0];
+
+    @Override
+    public void testStarted(final Description description) {
+        coverage = or(coverage, Probes.drain());
+    }
+
+    @Override
+    public void testFinished(final Description description) {
+        final long[] test = Probes.drain();
+        tests.put(description.getDisplayName(), test);
+        coverage = or(coverage, test);
+    }
+
+    /**
+     * @return the coverage of each test that ran, by display name
+     */
+    Map<String, long[]> getTests() {
+        return tests;
+    }
+
+    /**
+     * Collects the coverage of the suite so far, including probes reached since the last test ended.
+     *
+     * @return the bitset of reached probes
+     */
+    long[] getCoverage() {
+        coverage = or(coverage, Probes.drain());
+        return coverage.clone();
+    }
+
+    static long[] or(final long[] a, final long[] b) {
+        final long[] result = a.length >= b.length ? a.clone() : b.clone();
+        final long[] other = a.length >= b.length ? b : a;
+        for (int i = 0; i < other.length; i++) {
+            result[i] |= other[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.ClassFiles;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Finds the JUnit test classes of a suite.</p>
+ *
+ * <p>A test class is a public, concrete, top-level class with at least one {@link Test} method. This picks up the
+ * {@code RegressionTest<i>} classes of Randoop and the {@code _ESTest} classes of EvoSuite, but not the Randoop
+ * suite class that aggregates them or the EvoSuite scaffolding, so no test runs twice.</p>
+ */
+final class TestDiscovery {
+    private TestDiscovery() {
+    }
+
+    /**
+     * Loads the test classes found in a suite root without initializing them.
+     *
+     * @param suiteRoot the directory or jar holding the compiled suite
+     * @param loader    the loader to load the test classes with
+     * @return the test classes in name order
+     * @throws IOException if the suite root cannot be read
+     */
+    static List<Class<?>> find(final File suiteRoot, final ClassLoader loader) throws IOException {
+        final List<Class<?>> tests = new ArrayList<>();
+        for (final String name : ClassFiles.list(suiteRoot)) {
+            if (name.indexOf('$') >= 0) {
+                continue;
+            }
+            final Class<?> c;
+            try {
+                c = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Cannot load " + name + ": " + e);
+                continue;
+            }
+            if (isTestClass(c)) {
+                tests.add(c);
+            }
+        }
+        return tests;
+    }
+
+    private static boolean isTestClass(final Class<?> c) {
+        final int modifiers = c.getModifiers();
+        if (!Modifier.isPublic(modifiers) || Modifier.isAbstract(modifiers) || c.isInterface()) {
+            return false;
+        }
+        try {
+            for (final Method method : c.getMethods()) {
+                if (method.isAnnotationPresent(Test.class)) {
+                    return true;
+                }
+            }
+        } catch (LinkageError e) {
+            System.err.println("Cannot inspect " + c.getName() + ": " + e);
+        }
+        return false;
+    }
+}
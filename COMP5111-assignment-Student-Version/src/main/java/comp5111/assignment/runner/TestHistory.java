@@ -0,0 +1,114 @@
+package comp5111.assignment.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>The coverage of every single test, as recorded by earlier runs, for {@link Prioritization}.</p>
+ *
+ * <p>Tests are keyed by suite root and JUnit display name, since generated suites of different roots often reuse
+ * the same class names. Recording a suite again replaces what is known about the tests that ran and keeps the
+ * rest.</p>
+ *
+ * <pre>
+ * int     magic
+ * int     suite count
+ * per suite:
+ *   UTF   suite root
+ *   int   test count
+ *   per test: UTF display name, int word count, long[] coverage bitset
+ * </pre>
+ */
+public final class TestHistory {
+    static final int MAGIC = 0x48535431; // "HST1"
+
+    private final Map<String, Map<String, long[]>> suites = new LinkedHashMap<>();
+
+    /**
+     * Reads a history file.
+     *
+     * @param file the file written by {@link #save(File)}
+     * @return the history, empty if the file does not exist
+     * @throws IOException if the file cannot be read or holds no history
+     */
+    public static TestHistory load(final File file) throws IOException {
+        final TestHistory history = new TestHistory();
+        if (!file.isFile()) {
+            return history;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " holds no test history");
+            }
+            for (int s = in.readInt(); s > 0; s--) {
+                final String suite = in.readUTF();
+                final Map<String, long[]> tests = new LinkedHashMap<>();
+                for (int t = in.readInt(); t > 0; t--) {
+                    final String test = in.readUTF();
+                    final long[] coverage = new long[in.readInt()];
+                    for (int i = 0; i < coverage.length; i++) {
+                        coverage[i] = in.readLong();
+                    }
+                    tests.put(test, coverage);
+                }
+                history.suites.put(suite, tests);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Writes the history, replacing any existing file.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public synchronized void save(final File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(suites.size());
+            for (final Map.Entry<String, Map<String, long[]>> suite : suites.entrySet()) {
+                out.writeUTF(suite.getKey());
+                out.writeInt(suite.getValue().size());
+                for (final Map.Entry<String, long[]> test : suite.getValue().entrySet()) {
+                    out.writeUTF(test.getKey());
+                    out.writeInt(test.getValue().length);
+                    for (final long word : test.getValue()) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param suiteRoot the root of a suite
+     * @return the coverage of each test of the suite by display name, empty if the suite never ran
+     */
+    public synchronized Map<String, long[]> getTests(final File suiteRoot) {
+        final Map<String, long[]> tests = suites.get(key(suiteRoot));
+        return tests == null ? new LinkedHashMap<>() : new LinkedHashMap<>(tests);
+    }
+
+    /**
+     * Records the coverage of tests that just ran.
+     *
+     * @param suiteRoot the root of their suite
+     * @param tests     the coverage of each test by display name
+     */
+    public synchronized void putTests(final File suiteRoot, final Map<String, long[]> tests) {
+        suites.computeIfAbsent(key(suiteRoot), k -> new LinkedHashMap<>()).putAll(tests);
+    }
+
+    private static String key(final File suiteRoot) {
+        return suiteRoot.getAbsolutePath();
+    }
+}
@@ -0,0 +1,297 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.ClassFiles;
+import comp5111.assignment.instrument.InstrumentedJarWriter;
+import comp5111.assignment.instrument.ProbeTable;
+import comp5111.assignment.metrics.Phase;
+import comp5111.assignment.metrics.PipelineMetrics;
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs test suites against the instrumented classes in an instrumented jar.</p>
+ *
+ * <p>Suites either run in this JVM, one after the other, or in a {@link WorkerPool} of forked JVMs. In both cases
+ * the classes are loaded from the jar directly; nothing is unpacked.</p>
+ *
+ * <p>With {@link Attribution} on, the runner also records which test reached each probe first. The probe arrays
+ * are sized from the probe table of the jar before the first test starts, so they never grow under running
+ * tests.</p>
+ *
+ * <p>With a {@link TestHistory}, the coverage of each test is recorded as well. With a target coverage on top, suites
+ * that have history run {@link Prioritization prioritized}, one test at a time, and stop once the target is met.</p>
+ */
+public final class TestRunner {
+    private TestRunner() {
+    }
+
+    /**
+     * Runs every suite root as one suite.
+     *
+     * @param instrumentedJar the jar, or directory of per-package jars, with the instrumented classes under test
+     * @param suiteRoots      directories or jars holding the compiled test suites
+     * @param forks           the number of worker JVMs, 0 to run in this JVM
+     * @param options         what to record, and whether suites may stop early
+     * @param metrics         where to record the time spent running the suites
+     * @return one result per suite root, in the given order
+     * @throws IOException if a suite cannot be read or run
+     */
+    public static List<SuiteResult> runSuites(final File instrumentedJar, final List<File> suiteRoots,
+                                              final int forks, final RunOptions options,
+                                              final PipelineMetrics metrics) throws IOException {
+        final List<SuiteResult> results = new ArrayList<>(suiteRoots.size());
+        final ProbeTable table = InstrumentedJarWriter.openProbeTable(instrumentedJar);
+        final TestHistory history = options.getHistory();
+        final boolean recordTests = history != null;
+        if (forks <= 0) {
+            Probes.ensureCapacity(table.size());
+            for (final File suiteRoot : suiteRoots) {
+                try (PipelineMetrics.Span span = metrics.start(Phase.TEST_EXECUTION, suiteRoot.getPath(), null)) {
+                    results.add(runInProcess(instrumentedJar, suiteRoot, options.getAttribution(), recordTests,
+                        plan(table, suiteRoot, options)));
+                }
+            }
+        } else {
+            final String classPath = System.getProperty("java.class.path");
+            try (PipelineMetrics.Span span = metrics.start(Phase.TEST_EXECUTION);
+                 WorkerPool pool = new WorkerPool(forks, classPath, instrumentedJar, table.size())) {
+                final List<Future<SuiteResult>> pending = new ArrayList<>(suiteRoots.size());
+                for (final File suiteRoot : suiteRoots) {
+                    pending.add(pool.submit(suiteRoot, testClassNames(instrumentedJar, suiteRoot),
+                        options.getAttribution(), recordTests, plan(table, suiteRoot, options)));
+                }
+                for (final Future<SuiteResult> future : pending) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running suites", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Suite failed to run", e.getCause());
+            }
+        }
+
+        if (recordTests) {
+            for (int i = 0; i < suiteRoots.size(); i++) {
+                history.putTests(suiteRoots.get(i), results.get(i).getTestCoverage());
+            }
+        }
+        return results;
+    }
+
+    private static Prioritization plan(final ProbeTable table, final File suiteRoot, final RunOptions options) {
+        if (options.getHistory() == null || options.getTarget() <= 0) {
+            return null;
+        }
+        final Map<String, long[]> tests = options.getHistory().getTests(suiteRoot);
+        // without history there is nothing to order by, so the suite runs as a whole
+        return tests.isEmpty() ? null : Prioritization.plan(tests, table, options.getTarget());
+    }
+
+    /**
+     * Runs one suite in this JVM.
+     *
+     * @param instrumentedJar the jar, or directory of per-package jars, with the instrumented classes under test
+     * @param suiteRoot       the directory or jar holding the compiled suite
+     * @param attribution     what to record about the first test to reach each probe
+     * @param recordTests     whether to record the coverage of each test
+     * @param plan            the order to run the tests in and when to stop, {@code null} to run them all
+     * @return the result of the suite
+     * @throws IOException if the suite cannot be read
+     */
+    public static SuiteResult runInProcess(final File instrumentedJar, final File suiteRoot,
+                                           final Attribution attribution, final boolean recordTests,
+                                           final Prioritization plan) throws IOException {
+        try (ChildFirstClassLoader loader = newLoader(instrumentedJar, suiteRoot)) {
+            final List<Class<?>> tests = TestDiscovery.find(suiteRoot, loader);
+            final List<String> names = new ArrayList<>(tests.size());
+            for (final Class<?> test : tests) {
+                names.add(test.getName());
+            }
+
+            final Thread thread = Thread.currentThread();
+            final ClassLoader contextLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(loader);
+            try {
+                return execute(tests, names, 0, attribution, recordTests, plan);
+            } finally {
+                thread.setContextClassLoader(contextLoader);
+            }
+        }
+    }
+
+    /**
+     * Runs loaded test classes with fresh probes. Shared by this runner and {@link ForkedWorker}.
+     *
+     * @param tests        the test classes, loaded by the loader of the classes under test
+     * @param names        the names of all test classes of the suite
+     * @param loadFailures the number of test classes that could not be loaded, counted as failures
+     * @param attribution  what to record about the first test to reach each probe
+     * @param recordTests  whether to record the coverage of each test
+     * @param plan         the order to run the tests in and when to stop, {@code null} to run them all
+     */
+    static SuiteResult execute(final List<Class<?>> tests, final List<String> names, final int loadFailures,
+                               final Attribution attribution, final boolean recordTests, final Prioritization plan) {
+        Probes.reset();
+        final JUnitCore junit = new JUnitCore();
+        AttributionListener listener = null;
+        if (attribution != Attribution.OFF) {
+            listener = new AttributionListener();
+            junit.addListener(listener);
+            Probes.startAttribution(attribution == Attribution.TIMED);
+        }
+        final TestCoverageListener testCoverage = recordTests ? new TestCoverageListener() : null;
+        if (testCoverage != null) {
+            junit.addListener(testCoverage);
+        }
+        try {
+            final List<Result> results = new ArrayList<>();
+            int skipped = -1;
+            if (plan == null) {
+                results.add(junit.run(tests.toArray(new Class<?>[0])));
+            } else {
+                skipped = runPrioritized(junit, tests, plan, testCoverage, results);
+            }
+
+            int runCount = 0;
+            int failureCount = loadFailures;
+            int ignoreCount = 0;
+            for (final Result result : results) {
+                for (final Failure failure : result.getFailures()) {
+                    System.err.println(failure.getTestHeader() + ": " + failure.getMessage());
+                }
+                runCount += result.getRunCount();
+                failureCount += result.getFailureCount();
+                ignoreCount += result.getIgnoreCount();
+            }
+            final long[] coverage = coverage(testCoverage);
+            final SuiteResult suiteResult = listener == null
+                ? new SuiteResult(names, runCount, failureCount, ignoreCount, coverage)
+                : new SuiteResult(names, runCount, failureCount, ignoreCount, coverage, listener.getTestNames(),
+                    Probes.firstTests(), Probes.firstTimes());
+            suiteResult.setSkippedCount(skipped);
+            if (testCoverage != null) {
+                suiteResult.setTestCoverage(testCoverage.getTests());
+            }
+            return suiteResult;
+        } finally {
+            if (listener != null) {
+                Probes.stopAttribution();
+            }
+        }
+    }
+
+    /**
+     * Runs single tests in the planned order until the target is met.
+     *
+     * @return the number of tests left out
+     */
+    private static int runPrioritized(final JUnitCore junit, final List<Class<?>> tests, final Prioritization plan,
+                                      final TestCoverageListener testCoverage, final List<Result> results) {
+        final Map<String, Class<?>> testClasses = new LinkedHashMap<>();
+        final Map<String, Description> descriptions = new HashMap<>();
+        for (final Class<?> test : tests) {
+            for (final Description description : leaves(Request.aClass(test).getRunner().getDescription())) {
+                testClasses.put(description.getDisplayName(), test);
+                descriptions.put(description.getDisplayName(), description);
+            }
+        }
+        final Set<String> order = new LinkedHashSet<>();
+        for (final String test : plan.getOrder()) {
+            if (testClasses.containsKey(test)) {
+                order.add(test);
+            }
+        }
+        order.addAll(testClasses.keySet());
+
+        int executed = 0;
+        for (final String test : order) {
+            if (plan.isMet(coverage(testCoverage))) {
+                break;
+            }
+            // a fresh request per test, since filtering changes the runner of a request
+            results.add(junit.run(Request.aClass(testClasses.get(test)).filterWith(descriptions.get(test))));
+            executed++;
+        }
+        return order.size() - executed;
+    }
+
+    private static List<Description> leaves(final Description description) {
+        if (description.isTest()) {
+            return Collections.singletonList(description);
+        }
+        final List<Description> leaves = new ArrayList<>();
+        for (final Description child : description.getChildren()) {
+            leaves.addAll(leaves(child));
+        }
+        return leaves;
+    }
+
+    private static long[] coverage(final TestCoverageListener testCoverage) {
+        return testCoverage == null ? Probes.snapshot() : testCoverage.getCoverage();
+    }
+
+    private static List<String> testClassNames(final File instrumentedJar, final File suiteRoot) throws IOException {
+        try (ChildFirstClassLoader loader = newLoader(instrumentedJar, suiteRoot)) {
+            final List<String> names = new ArrayList<>();
+            for (final Class<?> test : TestDiscovery.find(suiteRoot, loader)) {
+                names.add(test.getName());
+            }
+            return names;
+        }
+    }
+
+    static ChildFirstClassLoader newLoader(final File instrumentedJar, final File suiteRoot)
+        throws IOException {
+        final URL[] jars = outputUrls(instrumentedJar);
+        final URL[] urls = Arrays.copyOf(jars, jars.length + 1);
+        urls[jars.length] = suiteRoot.toURI().toURL();
+        return new ChildFirstClassLoader(urls, TestRunner.class.getClassLoader());
+    }
+
+    /**
+     * @param instrumentedJar an instrumented jar or directory of per-package jars
+     * @return the URLs of the jars making it up
+     * @throws IOException if a jar has no URL form
+     */
+    static URL[] outputUrls(final File instrumentedJar) throws IOException {
+        final List<File> jars = InstrumentedJarWriter.outputJars(instrumentedJar);
+        final URL[] urls = new URL[jars.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = jars.get(i).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * @param instrumentedJar an instrumented jar or directory of per-package jars
+     * @return the names of all classes in it
+     * @throws IOException if a jar cannot be read
+     */
+    static List<String> outputClassNames(final File instrumentedJar) throws IOException {
+        final List<String> names = new ArrayList<>();
+        for (final File jar : InstrumentedJarWriter.outputJars(instrumentedJar)) {
+            names.addAll(ClassFiles.list(jar));
+        }
+        return names;
+    }
+}
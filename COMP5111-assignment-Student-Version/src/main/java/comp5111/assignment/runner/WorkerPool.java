@@ -0,0 +1,284 @@
+package comp5111.assignment.runner;
+
+import comp5111.assignment.runtime.Probes;
+import org.junit.runner.Description;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A pool of pre-started worker JVMs that run test suites in isolation.</p>
+ *
+ * <p>Forking a fresh JVM for every suite pays for JVM startup, class loading and JIT warm-up each time.
+ * The pool starts its workers once, lets each of them load the instrumented classes under test from the jar up
+ * front, and then hands suites to idle workers over their standard input. The coverage bitset of each suite comes
+ * back over the worker's standard output; see {@link ForkedWorker} for the protocol.</p>
+ *
+ * <p>Probes are reset before every suite, so a worker can be reused without leaking coverage between suites.
+ * A worker that dies while running a suite (e.g. because a test called {@code System.exit}) is replaced by a new
+ * one and the suite fails with an {@link IOException}.</p>
+ *
+ * <p>Workers also run single mutants for {@link MutationAnalysis}. A mutant that does not finish in time is stopped
+ * by killing its worker, so a mutant stuck in an endless loop cannot keep a core busy and slow down the mutants after
+ * it; the worker is then replaced as well.</p>
+ */
+public final class WorkerPool implements Closeable {
+    private final List<String> command;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final List<Worker> workers = Collections.synchronizedList(new ArrayList<>());
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the workers and waits until all of them have loaded the instrumented classes.
+     *
+     * @param size            the number of worker JVMs
+     * @param classPath       the class path of the workers; must contain the probe runtime and JUnit
+     * @param instrumentedJar the jar, or directory of per-package jars, with the instrumented classes under test
+     * @param probes          the number of probes in the jar, so workers can size their probe arrays up front
+     * @throws IOException if a worker cannot be started
+     */
+    public WorkerPool(final int size, final String classPath, final File instrumentedJar, final int probes)
+        throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        final List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.addAll(ClassDataSharing.inheritedOptions());
+        final String buffers = System.getProperty(Probes.BUFFERS_PROPERTY);
+        if (buffers != null) {
+            cmd.add("-D" + Probes.BUFFERS_PROPERTY + "=" + buffers);
+        }
+        cmd.add("-cp");
+        cmd.add(classPath);
+        cmd.add(ForkedWorker.class.getName());
+        cmd.add(instrumentedJar.getAbsolutePath());
+        cmd.add(String.valueOf(probes));
+        this.command = Collections.unmodifiableList(cmd);
+
+        // start every JVM before waiting on any of them, so they warm up in parallel
+        final List<Worker> started = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                started.add(new Worker(command));
+            }
+            for (final Worker worker : started) {
+                worker.awaitReady();
+                workers.add(worker);
+                idle.add(worker);
+            }
+        } catch (IOException e) {
+            for (final Worker worker : started) {
+                worker.destroy();
+            }
+            throw e;
+        }
+        this.executor = Executors.newFixedThreadPool(size);
+    }
+
+    /**
+     * Runs a suite on the next idle worker, waiting for one to become free.
+     *
+     * @param suiteRoot   the directory or jar holding the compiled suite
+     * @param testClasses the test classes making up the suite
+     * @param attribution what to record about the first test to reach each probe
+     * @param recordTests whether to record the coverage of each test
+     * @param plan        the order to run the tests in and when to stop, {@code null} to run them all
+     * @return the result of the suite
+     * @throws IOException          if the worker died while running the suite
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    public SuiteResult run(final File suiteRoot, final List<String> testClasses, final Attribution attribution,
+                           final boolean recordTests, final Prioritization plan)
+        throws IOException, InterruptedException {
+        final Worker worker = idle.take();
+        try {
+            final SuiteResult result = worker.run(suiteRoot, testClasses, attribution, recordTests, plan);
+            idle.add(worker);
+            return result;
+        } catch (IOException e) {
+            replace(worker);
+            throw new IOException("Worker died while running " + testClasses, e);
+        }
+    }
+
+    /**
+     * Runs tests against one mutant on the next idle worker, one at a time until one fails, and records what became
+     * of the mutant. A worker that dies during the run, e.g. because the mutant made it call {@code System.exit},
+     * counts as killing the mutant.
+     *
+     * @param suiteRoot     the directory or jar holding the compiled suite
+     * @param className     the class the mutant is in
+     * @param mutant        the mutant id
+     * @param tests         the tests to run, in order
+     * @param timeoutMillis how long the tests may take before the worker is killed and the mutant timed out
+     * @param result        where to record the status of the mutant
+     * @throws IOException          if a replacement worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    void runMutant(final File suiteRoot, final String className, final int mutant, final List<Description> tests,
+                   final long timeoutMillis, final MutationResult result) throws IOException, InterruptedException {
+        final Worker worker = idle.take();
+        final ScheduledFuture<?> kill = watchdog.schedule(worker::destroy, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            worker.runMutant(suiteRoot, className, mutant, tests, result);
+            if (kill.cancel(false)) {
+                idle.add(worker);
+            } else {
+                // killed just after it replied
+                replace(worker);
+            }
+        } catch (IOException e) {
+            final boolean timedOut = !kill.cancel(false);
+            replace(worker);
+            if (timedOut) {
+                result.set(mutant, MutantStatus.TIMED_OUT, null);
+            } else {
+                result.set(mutant, MutantStatus.KILLED, "(worker exited)");
+            }
+        }
+    }
+
+    private void replace(final Worker worker) throws IOException {
+        worker.destroy();
+        workers.remove(worker);
+        final Worker replacement = new Worker(command);
+        replacement.awaitReady();
+        workers.add(replacement);
+        idle.add(replacement);
+    }
+
+    /**
+     * Schedules a suite to run on the next idle worker.
+     *
+     * @param suiteRoot   the directory or jar holding the compiled suite
+     * @param testClasses the test classes making up the suite
+     * @param attribution what to record about the first test to reach each probe
+     * @param recordTests whether to record the coverage of each test
+     * @param plan        the order to run the tests in and when to stop, {@code null} to run them all
+     * @return the pending result of the suite
+     */
+    public Future<SuiteResult> submit(final File suiteRoot, final List<String> testClasses,
+                                      final Attribution attribution, final boolean recordTests,
+                                      final Prioritization plan) {
+        return executor.submit(() -> run(suiteRoot, testClasses, attribution, recordTests, plan));
+    }
+
+    /**
+     * Asks every worker to exit and releases the pool.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+        synchronized (workers) {
+            for (final Worker worker : workers) {
+                worker.exit();
+            }
+            workers.clear();
+        }
+    }
+
+    private static final class Worker {
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        Worker(final List<String> command) throws IOException {
+            this.process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        void awaitReady() throws IOException {
+            if (in.readInt() != ForkedWorker.READY) {
+                destroy();
+                throw new IOException("Worker did not start properly: " + process);
+            }
+        }
+
+        SuiteResult run(final File suiteRoot, final List<String> testClasses, final Attribution attribution,
+                        final boolean recordTests, final Prioritization plan) throws IOException {
+            out.writeInt(ForkedWorker.CMD_RUN);
+            out.writeUTF(suiteRoot.getAbsolutePath());
+            out.writeInt(attribution.ordinal());
+            out.writeBoolean(recordTests);
+            out.writeBoolean(plan != null);
+            if (plan != null) {
+                plan.write(out);
+            }
+            out.writeInt(testClasses.size());
+            for (final String className : testClasses) {
+                out.writeUTF(className);
+            }
+            out.flush();
+
+            return ExecutionData.readSuite(in);
+        }
+
+        void runMutant(final File suiteRoot, final String className, final int mutant,
+                       final List<Description> tests, final MutationResult result) throws IOException {
+            out.writeInt(ForkedWorker.CMD_MUTANT);
+            out.writeUTF(suiteRoot.getAbsolutePath());
+            out.writeUTF(className);
+            out.writeInt(mutant);
+            out.writeInt(tests.size());
+            for (final Description test : tests) {
+                out.writeUTF(test.getClassName());
+                out.writeUTF(test.getMethodName());
+            }
+            out.flush();
+
+            final int outcome = in.readInt();
+            if (outcome == ForkedWorker.MUTANT_SURVIVED) {
+                result.set(mutant, MutantStatus.SURVIVED, null);
+            } else if (outcome == ForkedWorker.MUTANT_KILLED) {
+                result.set(mutant, MutantStatus.KILLED, in.readUTF());
+            } else {
+                result.set(mutant, MutantStatus.ERROR, in.readUTF());
+            }
+        }
+
+        void exit() {
+            try {
+                out.writeInt(ForkedWorker.CMD_EXIT);
+                out.close();
+            } catch (IOException e) {
+                // already gone
+            }
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+    }
+}
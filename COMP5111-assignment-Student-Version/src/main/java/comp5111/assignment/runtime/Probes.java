@@ -0,0 +1,325 @@
+package comp5111.assignment.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Probe runtime called from instrumented classes.</p>
+ *
+ * <p>Every statement, branch or line that is instrumented gets a probe id at instrumentation time.
+ * The instrumented code calls {@link #hit(int)} with that id, and the runtime records that the probe
+ * has been reached. The recorded probes can be read back as a bitset with {@link #snapshot()}.</p>
+ *
+ * <p>With {@link #startAttribution(boolean)} the runtime also records which test reached each probe first.
+ * The runner announces the running test with {@link #setCurrentTest(int)}; the first hit of a probe claims its slot
+ * with a single compare-and-set from {@link #UNCLAIMED} to the current test, optionally followed by the time of the
+ * hit. Later hits of the probe only read the slot, so attribution costs next to nothing once a probe has fired.</p>
+ *
+ * <p>By default all threads set their flags in one shared array. When tests drive the classes under test from
+ * several threads, neighbouring flags written by different threads share cache lines and every hit invalidates the
+ * line in the other cores. Setting the system property {@value #BUFFERS_PROPERTY} to {@code thread} gives every
+ * thread its own flag array instead, padded on both sides so it shares no cache line with other objects. The
+ * buffers are or-ed into the shared array by {@link #snapshot()}; the buffer of a thread that has ended is merged
+ * once more and then dropped. The merged result is the same as in shared mode.</p>
+ *
+ * <p>This class must not depend on anything but the JDK, since it is loaded next to the classes under test.</p>
+ */
+public final class Probes {
+    /**
+     * Attribution slot of a probe that has not been reached yet.
+     */
+    public static final int UNCLAIMED = 0;
+    /**
+     * Test index of hits outside of any test, e.g. in a {@code @BeforeClass} method.
+     */
+    public static final int NO_TEST = -1;
+    /**
+     * System property selecting the buffer mode: {@code shared} (the default) or {@code thread}.
+     */
+    public static final String BUFFERS_PROPERTY = "comp5111.buffers";
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // read once, so the JIT can drop the branch in hit() that is not taken
+    private static final boolean THREAD_LOCAL = "thread".equalsIgnoreCase(System.getProperty(BUFFERS_PROPERTY));
+    // two cache lines of unused flags on either side of a thread buffer, covers adjacent-line prefetching
+    private static final int PADDING = 128;
+    private static final List<Buffer> BUFFERS = new ArrayList<>();
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Probes::register);
+
+    private static volatile boolean[] hits = new boolean[INITIAL_CAPACITY];
+    // when set, always at least as long as hits: grow() publishes these before hits
+    private static volatile AtomicIntegerArray firstTests;
+    private static volatile AtomicLongArray firstTimes;
+    private static volatile int currentTest = NO_TEST;
+    private static long attributionStart;
+
+    private Probes() {
+    }
+
+    /**
+     * Records that the probe with the given id has been reached.
+     *
+     * @param id the probe id assigned at instrumentation time, not negative
+     */
+    public static void hit(final int id) {
+        if (THREAD_LOCAL) {
+            BUFFER.get().hit(id);
+        } else {
+            boolean[] array = hits;
+            if (id >= array.length) {
+                array = grow(id);
+            }
+            if (!array[id]) {
+                array[id] = true;
+            }
+        }
+        final AtomicIntegerArray tests = firstTests;
+        if (tests != null && tests.get(id) == UNCLAIMED) {
+            claim(tests, id);
+        }
+    }
+
+    private static void claim(final AtomicIntegerArray tests, final int id) {
+        if (tests.compareAndSet(id, UNCLAIMED, currentTest)) {
+            final AtomicLongArray times = firstTimes;
+            if (times != null) {
+                times.lazySet(id, System.nanoTime() - attributionStart);
+            }
+        }
+    }
+
+    private static synchronized boolean[] grow(final int id) {
+        boolean[] array = hits;
+        if (id >= array.length) {
+            resize(Math.max(array.length * 2, id + 1));
+            array = hits;
+        }
+        return array;
+    }
+
+    private static void resize(final int capacity) {
+        if (firstTests != null) {
+            firstTests = copyOf(firstTests, capacity);
+        }
+        if (firstTimes != null) {
+            firstTimes = copyOf(firstTimes, capacity);
+        }
+        hits = Arrays.copyOf(hits, capacity);
+    }
+
+    /**
+     * Makes room for the given number of probes up front, so {@link #hit(int)} never has to grow its arrays while
+     * tests are running.
+     *
+     * @param probes the number of probes of the instrumented classes
+     */
+    public static synchronized void ensureCapacity(final int probes) {
+        if (probes > hits.length) {
+            resize(probes);
+        }
+    }
+
+    /**
+     * Returns the probes reached so far as a bitset, where bit {@code id % 64} of word {@code id / 64} is set
+     * if probe {@code id} has been reached.
+     *
+     * @return the bitset of reached probes, never null
+     */
+    public static long[] snapshot() {
+        if (THREAD_LOCAL) {
+            mergeBuffers();
+        }
+        final boolean[] array = hits;
+        final long[] words = new long[(array.length + 63) >>> 6];
+        for (int i = 0; i < array.length; i++) {
+            if (array[i]) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the probes reached since the last reset or drain and forgets them, so the next call only sees what was
+     * reached in between. Attribution is kept.
+     *
+     * @return the bitset of reached probes, as in {@link #snapshot()}
+     */
+    public static synchronized long[] drain() {
+        final long[] words = snapshot();
+        Arrays.fill(hits, false);
+        for (final Buffer buffer : BUFFERS) {
+            Arrays.fill(buffer.flags, false);
+        }
+        return words;
+    }
+
+    /**
+     * Forgets every probe reached so far, including their attribution.
+     */
+    public static synchronized void reset() {
+        Arrays.fill(hits, false);
+        for (final Buffer buffer : BUFFERS) {
+            Arrays.fill(buffer.flags, false);
+        }
+        if (firstTests != null) {
+            firstTests = new AtomicIntegerArray(hits.length);
+        }
+        if (firstTimes != null) {
+            firstTimes = new AtomicLongArray(hits.length);
+        }
+        attributionStart = System.nanoTime();
+    }
+
+    /**
+     * Starts recording which test reaches each probe first. Probes reached before are not attributed.
+     *
+     * @param timestamps whether to record the time of each first hit as well
+     */
+    public static synchronized void startAttribution(final boolean timestamps) {
+        currentTest = NO_TEST;
+        attributionStart = System.nanoTime();
+        firstTimes = timestamps ? new AtomicLongArray(hits.length) : null;
+        firstTests = new AtomicIntegerArray(hits.length);
+    }
+
+    /**
+     * Stops recording first hits and drops what was recorded.
+     */
+    public static synchronized void stopAttribution() {
+        firstTests = null;
+        firstTimes = null;
+    }
+
+    /**
+     * Announces the test that is running now.
+     *
+     * @param test the index of the test, positive, or {@link #NO_TEST} between tests
+     */
+    public static void setCurrentTest(final int test) {
+        currentTest = test;
+    }
+
+    /**
+     * Returns, for each probe, the index of the test that reached it first.
+     *
+     * @return the test index per probe id, {@link #UNCLAIMED} for probes not reached yet, {@code null} if
+     * attribution is off
+     */
+    public static int[] firstTests() {
+        final AtomicIntegerArray tests = firstTests;
+        if (tests == null) {
+            return null;
+        }
+        final int[] copy = new int[tests.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = tests.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns, for each probe, when it was first reached.
+     *
+     * @return nanoseconds since attribution started or was last reset, per probe id; {@code null} if timestamps
+     * are not recorded
+     */
+    public static long[] firstTimes() {
+        final AtomicLongArray times = firstTimes;
+        if (times == null) {
+            return null;
+        }
+        final long[] copy = new long[times.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = times.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @return whether each thread records its hits in a buffer of its own
+     */
+    public static boolean isThreadLocal() {
+        return THREAD_LOCAL;
+    }
+
+    private static synchronized Buffer register() {
+        final Buffer buffer = new Buffer(Thread.currentThread(), hits.length);
+        BUFFERS.add(buffer);
+        return buffer;
+    }
+
+    private static synchronized void mergeBuffers() {
+        for (final Iterator<Buffer> it = BUFFERS.iterator(); it.hasNext(); ) {
+            final Buffer buffer = it.next();
+            // seeing the owner dead orders all its writes before the merge below, so its last hits are not lost
+            final Thread owner = buffer.owner.get();
+            final boolean dead = owner == null || !owner.isAlive();
+            final boolean[] flags = buffer.flags;
+            final boolean[] array = hits;
+            for (int id = 0; id < flags.length - 2 * PADDING; id++) {
+                if (flags[id + PADDING]) {
+                    array[id] = true;
+                }
+            }
+            if (dead) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The flags of one thread, at {@code flags[id + PADDING]}. Only the owner writes them; {@link #mergeBuffers()}
+     * and {@link #reset()} touch them under the class lock, which is also held whenever the owner replaces the
+     * array.
+     */
+    private static final class Buffer {
+        private final WeakReference<Thread> owner;
+        private boolean[] flags;
+
+        Buffer(final Thread owner, final int capacity) {
+            this.owner = new WeakReference<>(owner);
+            this.flags = new boolean[capacity + 2 * PADDING];
+        }
+
+        void hit(final int id) {
+            boolean[] array = flags;
+            if (id >= array.length - 2 * PADDING) {
+                array = grow(id);
+            }
+            array[id + PADDING] = true;
+        }
+
+        private boolean[] grow(final int id) {
+            synchronized (Probes.class) {
+                // keeps the shared and attribution arrays at least as long as any buffer
+                Probes.grow(id);
+                final boolean[] array = new boolean[hits.length + 2 * PADDING];
+                System.arraycopy(flags, 0, array, 0, flags.length);
+                flags = array;
+                return array;
+            }
+        }
+    }
+
+    private static AtomicIntegerArray copyOf(final AtomicIntegerArray array, final int length) {
+        final AtomicIntegerArray copy = new AtomicIntegerArray(length);
+        for (int i = 0; i < array.length(); i++) {
+            copy.set(i, array.get(i));
+        }
+        return copy;
+    }
+
+    private static AtomicLongArray copyOf(final AtomicLongArray array, final int length) {
+        final AtomicLongArray copy = new AtomicLongArray(length);
+        for (int i = 0; i < array.length(); i++) {
+            copy.set(i, array.get(i));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,106 @@
+package comp5111.assignment.cut;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import comp5111.assignment.cut.ToolBox.RegExTools;
+import comp5111.assignment.cut.ToolBox.RegExTools.ReplacementRules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the parallel replacements of {@link RegExTools} against the sequential ones on texts split into many
+ * chunks, with matches that run past the end of their chunk.
+ */
+public class RegExToolsParallelTest {
+    static {
+        // a single-threaded common pool replaces sequentially, so make sure there is a pool to split across
+        if (System.getProperty("java.util.concurrent.ForkJoinPool.common.parallelism") == null) {
+            System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        }
+    }
+
+    private static final int LENGTH = 3 * RegExTools.PARALLEL_MIN_LENGTH;
+    private static final String TEXT = text(1);
+
+    @BeforeClass
+    public static void parallelPool() {
+        assumeTrue(ForkJoinPool.getCommonPoolParallelism() >= 2);
+    }
+
+    @Test
+    public void matchesWithinLines() {
+        assertReplaceAll("ERROR\\d+", "E");
+        assertReplaceAll("fox", "$0$0");
+        assertReplaceAll("(?m)^a", "A");
+        assertReplaceAll("b$", "B");
+        assertReplaceAll("\\bab\\b", "-");
+    }
+
+    @Test
+    public void matchesPastChunkEnds() {
+        assertReplaceAll("b\\na", "-");
+        assertReplaceAll("\\s+", " ");
+        assertReplaceAll("(?s)<.*?>", "[]");
+        assertReplaceAll("[^<]{1000,}", "X");
+        assertReplaceAll("a[\\s\\S]{0,40}?b", "$0!");
+        assertReplaceAll("(?s)\\n.*", "");
+    }
+
+    @Test
+    public void emptyMatchesAtChunkEnds() {
+        assertReplaceAll("x*", "-");
+        assertReplaceAll("(?<=\\n)", "|");
+        assertReplaceAll("(?=\\n)", "|");
+        assertReplaceAll("\\Z", "\\$");
+    }
+
+    @Test
+    public void rulesReplaceAsSequentially() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add("(a)\\s*\\1", "<$1>")
+            .add("b\\na", "$0")
+            .addLiteral("fox", "dog")
+            .add("\\n\\n+", "\n")
+            .build();
+        assertEquals(rules.replaceAll(TEXT), rules.replaceAllParallel(TEXT));
+    }
+
+    private static void assertReplaceAll(final String regex, final String replacement) {
+        final Pattern pattern = Pattern.compile(regex);
+        assertEquals(regex, pattern.matcher(TEXT).replaceAll(replacement),
+            RegExTools.replaceAllParallel(TEXT, pattern, replacement));
+    }
+
+    /**
+     * Short lines, now and then a run of blank lines and a line longer than a chunk, so chunks end both after a
+     * line break and within a line.
+     */
+    private static String text(final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder text = new StringBuilder(LENGTH + RegExTools.PARALLEL_CHUNK * 2);
+        while (text.length() < LENGTH) {
+            final int kind = random.nextInt(20_000);
+            if (kind == 0) {
+                for (int i = random.nextInt(2 * RegExTools.PARALLEL_CHUNK); i > 0; i--) {
+                    text.append("ab >".charAt(random.nextInt(4)));
+                }
+            } else if (kind < 200) {
+                text.append("\n\n\n\n");
+            } else if (kind < 1000) {
+                text.append("ERROR").append(random.nextInt(1000)).append(" the quick brown fox");
+            } else {
+                for (int i = random.nextInt(80); i > 0; i--) {
+                    text.append("ab x<>".charAt(random.nextInt(6)));
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
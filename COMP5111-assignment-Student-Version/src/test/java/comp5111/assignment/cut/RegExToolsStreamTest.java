@@ -0,0 +1,104 @@
+package comp5111.assignment.cut;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import comp5111.assignment.cut.ToolBox.RegExTools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the streaming replacements of {@link RegExTools} against {@link java.util.regex.Matcher} on inputs that
+ * span several chunks, so matches, empty matches and lookbehind meet the chunk boundaries.
+ */
+public class RegExToolsStreamTest {
+    // several chunks, so boundaries fall at different offsets within the repeated text
+    private static final int LENGTH = 4 * (RegExTools.STREAM_CHUNK + RegExTools.STREAM_WINDOW) + 123;
+
+    @Test
+    public void matchesAcrossChunkBoundaries() throws IOException {
+        final String text = repeat("the quick brown fox jumps over the lazy dog\n");
+        assertReplaceAll(text, "fox jumps", "FOX");
+        assertReplaceAll(text, "dog\nthe", "$0$0");
+        assertReplaceAll(text, "\\s+", " ");
+        assertReplaceAll(text, "o[^\\n]{0,40}o", "<$0>");
+    }
+
+    @Test
+    public void emptyMatchesAtChunkBoundaries() throws IOException {
+        final String text = random("ab\n", 1);
+        assertReplaceAll(text, "x*", "-");
+        assertReplaceAll(text, "b*", "-");
+        assertReplaceAll(text, "(?=a)", "^");
+        assertReplaceAll(text, "\\b", "|");
+        assertReplaceAll(text, "(?m)$", "\\$");
+    }
+
+    @Test
+    public void lookbehindSeesThePreviousChunk() throws IOException {
+        final String text = random("abc\n", 2);
+        assertReplaceAll(text, "(?<=a)b", "B");
+        assertReplaceAll(text, "(?<=abc\\n)a", "A");
+        assertReplaceAll(text, "(?<!c)\\n", "N");
+        assertReplaceAll(text, "(?m)^a", "A");
+    }
+
+    @Test
+    public void lastMatchAnchorCarriesAcrossChunks() throws IOException {
+        final String text = repeat("a") + "b" + repeat("a");
+        assertReplaceAll(text, "\\Ga", "x");
+        assertReplaceAll(random("ab", 3), "\\G[ab]{2}", "-");
+        assertReplaceAll(random("ab", 4), "a|\\Gb", "-");
+    }
+
+    @Test
+    public void escapedLastMatchAnchorIsLiteral() throws IOException {
+        final String text = repeat("\\G a ");
+        assertReplaceAll(text, "\\\\G", "g");
+        assertReplaceAll(text, "\\Q\\G\\E", "g");
+        assertReplaceAll(text, "[\\\\G]", "g");
+        final StringWriter out = new StringWriter();
+        RegExTools.replaceAll(new StringReader(text), out, Pattern.compile("\\G", Pattern.LITERAL), "g");
+        assertEquals(text.replace("\\G", "g"), out.toString());
+    }
+
+    @Test
+    public void replaceFirstAcrossChunkBoundaries() throws IOException {
+        final String text = repeat("a") + "b\nc";
+        final StringWriter out = new StringWriter();
+        assertEquals(1, RegExTools.replaceFirst(new StringReader(text), out, Pattern.compile("b\\nc"), "X"));
+        assertEquals(Pattern.compile("b\\nc").matcher(text).replaceFirst("X"), out.toString());
+    }
+
+    private static void assertReplaceAll(final String text, final String regex, final String replacement)
+        throws IOException {
+        assertTrue(text.length() > RegExTools.STREAM_CHUNK + RegExTools.STREAM_WINDOW);
+        final Pattern pattern = Pattern.compile(regex);
+        final StringWriter out = new StringWriter();
+        RegExTools.replaceAll(new StringReader(text), out, pattern, replacement);
+        assertEquals(regex, pattern.matcher(text).replaceAll(replacement), out.toString());
+    }
+
+    private static String repeat(final String part) {
+        final StringBuilder text = new StringBuilder(LENGTH + part.length());
+        while (text.length() < LENGTH) {
+            text.append(part);
+        }
+        return text.toString();
+    }
+
+    private static String random(final String chars, final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder text = new StringBuilder(LENGTH);
+        while (text.length() < LENGTH) {
+            text.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package comp5111.assignment.cut;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import comp5111.assignment.cut.ToolBox.RegExTools.ReplacementRules;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link ReplacementRules} against {@link java.util.regex.Matcher#replaceAll(String)}. Rules over disjoint
+ * chars give the same result as replacing one rule after the other, which the expected values rely on.
+ */
+public class ReplacementRulesTest {
+    private static final String TEXT = random("abxy()\\1 \n", 1, 10_000);
+
+    @Test
+    public void singleRuleReplacesAsMatcher() {
+        for (final String[] rule : new String[][] {{"(a)(b)?", "<$2$1>"}, {"(?<x>x+)", "${x}!"}, {"", "-"},
+            {"a|b", "\\$"}, {"(?i)X", "\\\\"}}) {
+            final ReplacementRules rules = ReplacementRules.builder().add(rule[0], rule[1]).build();
+            assertEquals(rule[0], Pattern.compile(rule[0]).matcher(TEXT).replaceAll(rule[1]), rules.replaceAll(TEXT));
+        }
+    }
+
+    @Test
+    public void backReferencesAreRenumbered() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add("(x)(y)?\\1", "[$1$2]")
+            .add("(a)(b)\\2\\1", "<$2$1>")
+            .add("(b)(\\()\\2\\1", "{$1}")
+            .build();
+        assertEquals(sequentially(TEXT, "(x)(y)?\\1", "[$1$2]", "(a)(b)\\2\\1", "<$2$1>", "(b)(\\()\\2\\1", "{$1}"),
+            rules.replaceAll(TEXT));
+    }
+
+    @Test
+    public void quotedBackReferencesStayLiteral() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add("(x)\\1", "X")
+            .add("\\Q(a)\\1\\E", "Q")
+            .add("[\\\\1](b)\\1", "$1")
+            .addLiteral("y\\2", "$1")
+            .build();
+        final String text = TEXT + "(a)\\1 \\bb y\\2";
+        assertEquals(sequentially(text, "(x)\\1", "X", "\\Q(a)\\1\\E", "Q", "[\\\\1](b)\\1", "$1", "y\\\\2", "\\$1"),
+            rules.replaceAll(text));
+    }
+
+    @Test
+    public void earlierRuleWinsAtTheSameStart() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add("ab", "#")
+            .add("abx", "#")
+            .add("b", "#")
+            .build();
+        assertEquals(Pattern.compile("ab|abx|b").matcher(TEXT).replaceAll("#"), rules.replaceAll(TEXT));
+        assertEquals("1x 3", ReplacementRules.builder().add("ab", "1").add("abx", "2").add("b", "3").build()
+            .replaceAll("abx b"));
+    }
+
+    @Test
+    public void earlierStartWinsOverRuleOrder() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add("ba", "#")
+            .add("ab", "#")
+            .build();
+        assertEquals(Pattern.compile("ba|ab").matcher(TEXT).replaceAll("#"), rules.replaceAll(TEXT));
+        assertEquals("2a 1b", ReplacementRules.builder().add("ba", "1").add("ab", "2").build()
+            .replaceAll("aba bab"));
+    }
+
+    @Test
+    public void flagsOfCompiledPatternsStayWithTheirRule() {
+        final ReplacementRules rules = ReplacementRules.builder()
+            .add(Pattern.compile("A B", Pattern.CASE_INSENSITIVE | Pattern.COMMENTS), "1")
+            .add(Pattern.compile("x(y)", Pattern.LITERAL), "\\$1")
+            .add("X", "2")
+            .build();
+        assertEquals("1 2 $1 1", rules.replaceAll("aB X x(y) ab"));
+    }
+
+    private static String sequentially(final String text, final String... rules) {
+        String result = text;
+        for (int r = 0; r < rules.length; r += 2) {
+            result = Pattern.compile(rules[r]).matcher(result).replaceAll(rules[r + 1]);
+        }
+        return result;
+    }
+
+    private static String random(final String chars, final long seed, final int length) {
+        final Random random = new Random(seed);
+        final StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return text.toString();
+    }
+}